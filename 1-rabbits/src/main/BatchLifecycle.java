@@ -0,0 +1,264 @@
+package main;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that handles the deaths and births of a tick in batch instead of
+ * rabbit by rabbit:
+ * 1. The slots of the population are split in ranges of RANGE slots, which
+ *    are scanned independently. Rabbits without energy are taken off the
+ *    grid and listed as dead, and rabbits with at least BirthThreshold
+ *    energy keep a third of it and are counted as parents.
+ * 2. The population is compacted: the survivors in slots beyond the new
+ *    size are moved into the slots of the dead rabbits below it, the k-th
+ *    of them into the k-th hole, so only the moved rabbits are touched.
+ * 3. After the grass has grown, the newborns are placed on distinct free
+ *    cells drawn in one go (see RabbitsGrassSimulationSpace.addRabbits).
+ * With a pool, the ranges of steps 1 and 2 are processed in parallel: every
+ * range only writes its own slots, the holes paired with its survivors and
+ * the cells of those rabbits, so no locks are needed and the outcome does
+ * not depend on the number of threads. It is not the same run as removing
+ * and adding rabbits one by one with the same seed, since the rabbits end up
+ * in different slots and the newborns are drawn in a different order.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class BatchLifecycle {
+	private static final int RANGE = 1 << 14;
+
+	private final RabbitsGrassSimulationSpace space;
+	private final ForkJoinPool pool;
+	private int birthThreshold;
+	private int numRabbits;
+	private int newSize;
+	private int numRanges;
+	private int[] dead = new int[0];
+	private int[] deadCount = new int[0];
+	private int[] births = new int[0];
+	private long[] energyDelta = new long[0];
+	private int[] holesBefore = new int[0];
+	private int[] moversBefore = new int[0];
+	private int[] energies = new int[0];
+
+	/**
+	 * Constructor of the class BatchLifecycle
+	 * @param space Space whose rabbits are born and die
+	 * @param pool Pool where the ranges of slots are processed, null to process them sequentially
+	 */
+	public BatchLifecycle(RabbitsGrassSimulationSpace space, ForkJoinPool pool) {
+		this.space = space;
+		this.pool = pool;
+	}
+
+	/**
+	 * Remove the rabbits without energy and split the energy of the ones that
+	 * reproduce, compacting the surviving rabbits into the first slots
+	 * @param birthThreshold Minimum energy of a rabbit to reproduce
+	 * @return int Number of rabbits that reproduce, to be placed with placeNewborns
+	 */
+	public int compact(int birthThreshold) {
+		RabbitPopulation rabbits = space.getRabbits();
+		this.birthThreshold = birthThreshold;
+		numRabbits = rabbits.size();
+		numRanges = (numRabbits + RANGE - 1) / RANGE;
+		if (dead.length < numRabbits) {
+			dead = new int[Math.max(numRabbits, 2 * dead.length)];
+		}
+		if (deadCount.length < numRanges) {
+			int length = Math.max(numRanges, 2 * deadCount.length);
+			deadCount = new int[length];
+			births = new int[length];
+			energyDelta = new long[length];
+			holesBefore = new int[length + 1];
+			moversBefore = new int[length + 1];
+		}
+
+		run(true);
+		int numDead = 0;
+		int numBirths = 0;
+		long delta = 0;
+		for (int range = 0; range < numRanges; range++) {
+			numDead += deadCount[range];
+			numBirths += births[range];
+			delta += energyDelta[range];
+		}
+		newSize = numRabbits - numDead;
+
+		// The free cell index is not thread safe, and the dead slots are overwritten below
+		for (int range = 0; range < numRanges; range++) {
+			for (int i = range * RANGE; i < range * RANGE + deadCount[range]; i++) {
+				space.releaseCell(dead[i]);
+			}
+		}
+
+		// Holes are dead slots below the new size, movers survivors at or above it
+		for (int range = 0; range < numRanges; range++) {
+			int start = range * RANGE;
+			int end = Math.min(numRabbits, start + RANGE);
+			int holes = 0;
+			int deadAbove = 0;
+			for (int i = start; i < start + deadCount[range]; i++) {
+				if (dead[i] < newSize) {
+					holes++;
+				} else {
+					deadAbove++;
+				}
+			}
+			holesBefore[range + 1] = holesBefore[range] + holes;
+			moversBefore[range + 1] = moversBefore[range] + Math.max(0, end - Math.max(start, newSize)) - deadAbove;
+		}
+
+		run(false);
+		rabbits.truncate(newSize);
+		rabbits.addTotalEnergy(delta);
+		return numBirths;
+	}
+
+	/**
+	 * Place the newborns of the last call to compact
+	 * @param count Number of newborns
+	 * @param maxEnergy Maximum initial energy of a newborn, drawn uniformly in [1, maxEnergy]
+	 * @param firstID Identifier of the first newborn, the next ones get consecutive identifiers
+	 * @return int Number of newborns placed, less than count if the grid became full
+	 */
+	public int placeNewborns(int count, int maxEnergy, long firstID) {
+		int placed = (int) Math.min(count, space.getNumFreeCells());
+		if (energies.length < placed) {
+			energies = new int[Math.max(placed, 2 * energies.length)];
+		}
+		space.getRandom().nextInts(energies, placed, maxEnergy);
+		for (int i = 0; i < placed; i++) {
+			energies[i]++;
+		}
+		space.addRabbits(firstID, placed, energies);
+		return placed;
+	}
+
+	/**
+	 * Process all the ranges, in parallel if there is a pool
+	 * @param scan True for the scan of step 1, false for the moves of step 2
+	 */
+	private void run(boolean scan) {
+		if (numRanges == 0) {
+			return;
+		}
+		if (pool != null && numRanges > 1) {
+			pool.invoke(new RangeTask(scan, 0, numRanges));
+		} else {
+			for (int range = 0; range < numRanges; range++) {
+				if (scan) {
+					scanRange(range);
+				} else {
+					moveRange(range);
+				}
+			}
+		}
+	}
+
+	/**
+	 * List the dead rabbits of a range in ascending order and count its parents
+	 * @param range Number of the range
+	 */
+	private void scanRange(int range) {
+		RabbitPopulation rabbits = space.getRabbits();
+		int start = range * RANGE;
+		int end = Math.min(numRabbits, start + RANGE);
+		int numDead = 0;
+		int numBirths = 0;
+		long delta = 0;
+		for (int slot = start; slot < end; slot++) {
+			int energy = rabbits.getEnergy(slot);
+			if (energy >= birthThreshold) {
+				rabbits.addEnergyUntracked(slot, energy / 3 - energy);
+				delta += energy / 3 - energy;
+				numBirths++;
+			} else if (energy < 1) {
+				space.vacateCell(slot);
+				dead[start + numDead] = slot;
+				numDead++;
+				delta -= energy;
+			}
+		}
+		deadCount[range] = numDead;
+		births[range] = numBirths;
+		energyDelta[range] = delta;
+	}
+
+	/**
+	 * Move the survivors of a range at or above the new size into their holes
+	 * @param range Number of the range
+	 */
+	private void moveRange(int range) {
+		int movers = moversBefore[range + 1] - moversBefore[range];
+		if (movers == 0) {
+			return;
+		}
+		// Find the hole of the first mover of the range
+		int k = moversBefore[range];
+		int holeRange = 0;
+		int low = 0;
+		int high = numRanges - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (holesBefore[middle + 1] <= k) {
+				low = middle + 1;
+			} else {
+				holeRange = middle;
+				high = middle - 1;
+			}
+		}
+		int hole = holeRange * RANGE + (k - holesBefore[holeRange]);
+
+		int start = range * RANGE;
+		int end = Math.min(numRabbits, start + RANGE);
+		int nextDead = start;
+		int lastDead = start + deadCount[range];
+		for (int slot = Math.max(start, newSize); slot < end; slot++) {
+			while (nextDead < lastDead && dead[nextDead] < slot) {
+				nextDead++;
+			}
+			if (nextDead < lastDead && dead[nextDead] == slot) {
+				continue;
+			}
+			while (hole - holeRange * RANGE >= holesBefore[holeRange + 1] - holesBefore[holeRange]) {
+				holeRange++;
+				hole = holeRange * RANGE;
+			}
+			space.moveSlot(slot, dead[hole]);
+			hole++;
+		}
+	}
+
+	/**
+	 * Task that splits a range of ranges in halves until a single one is
+	 * left, which is then scanned or moved
+	 */
+	private class RangeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final boolean scan;
+		private final int from;
+		private final int to;
+
+		RangeTask(boolean scan, int from, int to) {
+			this.scan = scan;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				if (scan) {
+					scanRange(from);
+				} else {
+					moveRange(from);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RangeTask(scan, from, middle), new RangeTask(scan, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package main;
+
+/**
+ * Check of RandomSource.nextBinomial against the exact binomial
+ * distribution, with probabilities close to 0, 1/2 and 1 and means on both
+ * sides of the switch from inversion to BTPE. For every case it draws many
+ * numbers, groups the outcomes so that every group expects at least 5 of
+ * them, and fails if the chi-square statistic exceeds its mean by more than
+ * 5 standard deviations.
+ * Usage: BinomialCheck [draws] [seed]
+ * prints one line per case and exits with status 1 if any of them fails.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class BinomialCheck {
+	private static final int[] N = { 200, 200, 1000, 1000, 50, 60, 100, 1000, 100000, 100000 };
+	private static final double[] P = { 64.0 / 65, 1.0 / 65, 0.001, 0.999, 0.9999, 0.5, 0.35, 0.5, 0.3, 0.99999 };
+
+	public static void main(String[] args) {
+		int draws = (args.length > 0) ? Integer.parseInt(args[0]) : 200000;
+		RandomSource random = new RandomSource((args.length > 1) ? Long.parseLong(args[1]) : 1);
+		boolean passed = true;
+		System.out.println("n,p,mean,expected_mean,chi_square,degrees_of_freedom,passed");
+		for (int c = 0; c < N.length; c++) {
+			passed &= check(random, N[c], P[c], draws);
+		}
+		if (!passed) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @param random Generator under test
+	 * @param n Number of trials
+	 * @param p Probability of success of every trial
+	 * @param draws Number of draws
+	 * @return boolean True if the draws fit the distribution
+	 */
+	private static boolean check(RandomSource random, int n, double p, int draws) {
+		long[] observed = new long[n + 1];
+		double sum = 0;
+		for (int i = 0; i < draws; i++) {
+			int k = random.nextBinomial(n, p);
+			observed[k]++;
+			sum += k;
+		}
+
+		// Exact probabilities, from the logarithm of the binomial coefficients
+		double[] expected = new double[n + 1];
+		double logCoefficient = 0;
+		for (int k = 0; k <= n; k++) {
+			expected[k] = draws * Math.exp(logCoefficient + k * Math.log(p) + (n - k) * Math.log1p(-p));
+			logCoefficient += Math.log(n - k) - Math.log(k + 1);
+		}
+
+		// Consecutive outcomes are grouped until the group expects at least 5 draws
+		double chiSquare = 0;
+		int groups = 0;
+		double groupExpected = 0;
+		long groupObserved = 0;
+		for (int k = 0; k <= n; k++) {
+			groupExpected += expected[k];
+			groupObserved += observed[k];
+			if (groupExpected >= 5 || k == n) {
+				double diff = groupObserved - groupExpected;
+				chiSquare += diff * diff / Math.max(groupExpected, 1e-300);
+				groups++;
+				groupExpected = 0;
+				groupObserved = 0;
+			}
+		}
+		int freedom = Math.max(1, groups - 1);
+		boolean passed = chiSquare <= freedom + 5 * Math.sqrt(2 * freedom);
+		System.out.println(n + "," + p + "," + sum / draws + "," + n * p + "," + chiSquare + "," + freedom + ","
+				+ passed);
+		return passed;
+	}
+}
@@ -0,0 +1,185 @@
+package main;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Class that reads or writes a checkpoint file from start to end through
+ * memory-mapped regions of at most REGION_BYTES, so a checkpoint is not
+ * limited to the 2GB of a single MappedByteBuffer. A new region is mapped
+ * from the current offset whenever the current one has too few bytes left
+ * for the next value, so a value never spans two regions, and arrays are
+ * copied in bulk in as many pieces as regions they cross.
+ * Values are read back with the same sequence of calls that wrote them.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+class CheckpointStream implements Closeable {
+	static final int REGION_BYTES = 1 << 30;
+
+	private final FileChannel channel;
+	private final FileChannel.MapMode mode;
+	private final long size;
+	private MappedByteBuffer region;
+	private long regionStart;
+
+	/**
+	 * Constructor of the class CheckpointStream
+	 * @param channel Channel of the file, closed with the stream
+	 * @param mode READ_WRITE to write the file, READ_ONLY to read it
+	 * @param size Number of bytes of the file, which is extended to it when writing
+	 */
+	CheckpointStream(FileChannel channel, FileChannel.MapMode mode, long size) {
+		this.channel = channel;
+		this.mode = mode;
+		this.size = size;
+	}
+
+	/**
+	 * @return long Offset in the file of the next value
+	 */
+	long position() {
+		return (region == null) ? 0 : regionStart + region.position();
+	}
+
+	/**
+	 * @param bytes Number of bytes needed for the next value
+	 * @return ByteBuffer Region with at least that number of bytes left
+	 */
+	private ByteBuffer region(int bytes) throws IOException {
+		if (region == null || region.remaining() < bytes) {
+			long offset = position();
+			if (offset + bytes > size) {
+				throw new EOFException("Checkpoint of " + size + " bytes ends before offset " + (offset + bytes));
+			}
+			force();
+			region = channel.map(mode, offset, Math.min(REGION_BYTES, size - offset));
+			regionStart = offset;
+		}
+		return region;
+	}
+
+	private void force() {
+		if (region != null && mode == FileChannel.MapMode.READ_WRITE) {
+			region.force();
+		}
+	}
+
+	void putInt(int value) throws IOException {
+		region(4).putInt(value);
+	}
+
+	int getInt() throws IOException {
+		return region(4).getInt();
+	}
+
+	void putLong(long value) throws IOException {
+		region(8).putLong(value);
+	}
+
+	long getLong() throws IOException {
+		return region(8).getLong();
+	}
+
+	/**
+	 * Write the first count elements of an array
+	 */
+	void putInts(int[] values, int count) throws IOException {
+		for (int done = 0; done < count;) {
+			ByteBuffer buffer = region(4);
+			int n = Math.min(count - done, buffer.remaining() / 4);
+			buffer.asIntBuffer().put(values, done, n);
+			buffer.position(buffer.position() + 4 * n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Read count elements into the beginning of an array
+	 */
+	void getInts(int[] values, int count) throws IOException {
+		for (int done = 0; done < count;) {
+			ByteBuffer buffer = region(4);
+			int n = Math.min(count - done, buffer.remaining() / 4);
+			buffer.asIntBuffer().get(values, done, n);
+			buffer.position(buffer.position() + 4 * n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Same as putInts for an array of longs
+	 */
+	void putLongs(long[] values, int count) throws IOException {
+		for (int done = 0; done < count;) {
+			ByteBuffer buffer = region(8);
+			int n = Math.min(count - done, buffer.remaining() / 8);
+			buffer.asLongBuffer().put(values, done, n);
+			buffer.position(buffer.position() + 8 * n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Same as getInts for an array of longs
+	 */
+	void getLongs(long[] values, int count) throws IOException {
+		for (int done = 0; done < count;) {
+			ByteBuffer buffer = region(8);
+			int n = Math.min(count - done, buffer.remaining() / 8);
+			buffer.asLongBuffer().get(values, done, n);
+			buffer.position(buffer.position() + 8 * n);
+			done += n;
+		}
+	}
+
+	/**
+	 * Write all the elements of a buffer, from 0 to its capacity
+	 */
+	void putShorts(ShortBuffer values) throws IOException {
+		ShortBuffer source = values.duplicate();
+		source.clear();
+		while (source.hasRemaining()) {
+			ByteBuffer buffer = region(2);
+			int n = Math.min(source.remaining(), buffer.remaining() / 2);
+			ShortBuffer piece = source.duplicate();
+			piece.limit(piece.position() + n);
+			buffer.asShortBuffer().put(piece);
+			buffer.position(buffer.position() + 2 * n);
+			source.position(source.position() + n);
+		}
+	}
+
+	/**
+	 * Read all the elements of a buffer, from 0 to its capacity
+	 */
+	void getShorts(ShortBuffer values) throws IOException {
+		ShortBuffer target = values.duplicate();
+		target.clear();
+		while (target.hasRemaining()) {
+			ByteBuffer buffer = region(2);
+			int n = Math.min(target.remaining(), buffer.remaining() / 2);
+			ShortBuffer piece = buffer.asShortBuffer();
+			piece.limit(n);
+			target.put(piece);
+			buffer.position(buffer.position() + 2 * n);
+		}
+	}
+
+	/**
+	 * Force the last region to the file, if writing, and close the channel
+	 */
+	public void close() throws IOException {
+		try {
+			force();
+		} finally {
+			region = null;
+			channel.close();
+		}
+	}
+}
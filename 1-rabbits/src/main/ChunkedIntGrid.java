@@ -0,0 +1,123 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Class that stores one integer per cell of a rectangular torus grid outside
+ * of the Java heap. The rows are grouped in chunks of a power of two rows,
+ * each one a direct IntBuffer of at most CHUNK_CELLS cells, so the grid can
+ * have more cells than the largest Java array while costing only 4 bytes per
+ * cell and no garbage collection work.
+ * get and set do not check nor wrap their coordinates, which must be inside
+ * the grid; a step beyond a border is brought back with wrapX and wrapY.
+ * Direct memory is limited by -XX:MaxDirectMemorySize, which defaults to the
+ * maximum heap size.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class ChunkedIntGrid {
+	private static final int CHUNK_CELLS = 1 << 24;
+
+	private final int sizeX;
+	private final int sizeY;
+	private final int rowShift;
+	private final int rowMask;
+	private final IntBuffer[] chunks;
+
+	/**
+	 * Constructor of the class ChunkedIntGrid. All cells start at 0.
+	 * @param sizeX Number of cells in the x axis
+	 * @param sizeY Number of cells in the y axis
+	 */
+	public ChunkedIntGrid(int sizeX, int sizeY) {
+		if (sizeX < 1 || sizeY < 1) {
+			throw new IllegalArgumentException("A grid needs at least one cell per axis");
+		}
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		int rowsPerChunk = Integer.highestOneBit(Math.max(1, CHUNK_CELLS / sizeX));
+		this.rowShift = Integer.numberOfTrailingZeros(rowsPerChunk);
+		this.rowMask = rowsPerChunk - 1;
+		this.chunks = new IntBuffer[(int) (((long) sizeY + rowsPerChunk - 1) >> rowShift)];
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			int rows = Math.min(rowsPerChunk, sizeY - (chunk << rowShift));
+			chunks[chunk] = ByteBuffer.allocateDirect(4 * rows * sizeX).order(ByteOrder.nativeOrder()).asIntBuffer();
+		}
+	}
+
+	/**
+	 * @param x This is the x coordinate, in [0, sizeX)
+	 * @param y This is the y coordinate, in [0, sizeY)
+	 * @return int Value of the cell (x, y)
+	 */
+	public int get(int x, int y) {
+		return chunks[y >>> rowShift].get((y & rowMask) * sizeX + x);
+	}
+
+	/**
+	 * @param x This is the x coordinate, in [0, sizeX)
+	 * @param y This is the y coordinate, in [0, sizeY)
+	 * @param value New value of the cell (x, y)
+	 */
+	public void set(int x, int y, int value) {
+		chunks[y >>> rowShift].put((y & rowMask) * sizeX + x, value);
+	}
+
+	/**
+	 * @param x Any x coordinate, e.g. one step beyond a border
+	 * @return int Same column of the torus in [0, sizeX)
+	 */
+	public int wrapX(int x) {
+		return (x < 0) ? x + sizeX : (x >= sizeX) ? x - sizeX : x;
+	}
+
+	/**
+	 * @param y Any y coordinate, e.g. one step beyond a border
+	 * @return int Same row of the torus in [0, sizeY)
+	 */
+	public int wrapY(int y) {
+		return (y < 0) ? y + sizeY : (y >= sizeY) ? y - sizeY : y;
+	}
+
+	/**
+	 * Set every cell to the same value
+	 * @param value New value of all the cells
+	 */
+	public void fill(int value) {
+		for (IntBuffer chunk : chunks) {
+			for (int i = 0; i < chunk.capacity(); i++) {
+				chunk.put(i, value);
+			}
+		}
+	}
+
+	/**
+	 * Copy the cells of a grid of the same size, one chunk at a time
+	 * @param other Grid that is copied
+	 */
+	public void copyFrom(ChunkedIntGrid other) {
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			IntBuffer source = other.chunks[chunk].duplicate();
+			source.clear();
+			chunks[chunk].clear();
+			chunks[chunk].put(source);
+		}
+	}
+
+	/**
+	 * @return long Number of cells of the grid
+	 */
+	public long getNumCells() {
+		return (long) sizeX * sizeY;
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+}
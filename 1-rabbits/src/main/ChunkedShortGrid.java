@@ -0,0 +1,112 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+
+/**
+ * Same as ChunkedIntGrid for values in [0, MAX_VALUE], which take 2 bytes
+ * per cell instead of 4. Used for the grass energy, which never exceeds
+ * MaxGrassEnergy. Values out of that range are not checked and do not
+ * survive a set.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class ChunkedShortGrid {
+	public static final int MAX_VALUE = Short.MAX_VALUE;
+	private static final int CHUNK_CELLS = 1 << 24;
+
+	private final int sizeX;
+	private final int sizeY;
+	private final int rowShift;
+	private final int rowMask;
+	private final ShortBuffer[] chunks;
+
+	/**
+	 * Constructor of the class ChunkedShortGrid. All cells start at 0.
+	 * @param sizeX Number of cells in the x axis
+	 * @param sizeY Number of cells in the y axis
+	 */
+	public ChunkedShortGrid(int sizeX, int sizeY) {
+		if (sizeX < 1 || sizeY < 1) {
+			throw new IllegalArgumentException("A grid needs at least one cell per axis");
+		}
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		int rowsPerChunk = Integer.highestOneBit(Math.max(1, CHUNK_CELLS / sizeX));
+		this.rowShift = Integer.numberOfTrailingZeros(rowsPerChunk);
+		this.rowMask = rowsPerChunk - 1;
+		this.chunks = new ShortBuffer[(int) (((long) sizeY + rowsPerChunk - 1) >> rowShift)];
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			int rows = Math.min(rowsPerChunk, sizeY - (chunk << rowShift));
+			chunks[chunk] = ByteBuffer.allocateDirect(2 * rows * sizeX).order(ByteOrder.nativeOrder()).asShortBuffer();
+		}
+	}
+
+	/**
+	 * @param x This is the x coordinate, in [0, sizeX)
+	 * @param y This is the y coordinate, in [0, sizeY)
+	 * @return int Value of the cell (x, y)
+	 */
+	public int get(int x, int y) {
+		return chunks[y >>> rowShift].get((y & rowMask) * sizeX + x);
+	}
+
+	/**
+	 * @param x This is the x coordinate, in [0, sizeX)
+	 * @param y This is the y coordinate, in [0, sizeY)
+	 * @param value New value of the cell (x, y), in [0, MAX_VALUE]
+	 */
+	public void set(int x, int y, int value) {
+		chunks[y >>> rowShift].put((y & rowMask) * sizeX + x, (short) value);
+	}
+
+	/**
+	 * Copy the cells of a grid of the same size, one chunk at a time
+	 * @param other Grid that is copied
+	 */
+	public void copyFrom(ChunkedShortGrid other) {
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			ShortBuffer source = other.chunks[chunk].duplicate();
+			source.clear();
+			chunks[chunk].clear();
+			chunks[chunk].put(source);
+		}
+	}
+
+	/**
+	 * @param out Stream where all the cells are written, row by row
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	void writeTo(CheckpointStream out) throws IOException {
+		for (ShortBuffer chunk : chunks) {
+			out.putShorts(chunk);
+		}
+	}
+
+	/**
+	 * @param in Stream from where all the cells are read, row by row
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	void readFrom(CheckpointStream in) throws IOException {
+		for (ShortBuffer chunk : chunks) {
+			in.getShorts(chunk);
+		}
+	}
+
+	/**
+	 * @return long Number of cells of the grid
+	 */
+	public long getNumCells() {
+		return (long) sizeX * sizeY;
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+}
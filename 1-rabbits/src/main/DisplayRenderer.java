@@ -0,0 +1,170 @@
+package main;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.SwingUtilities;
+
+import uchicago.src.sim.gui.DisplaySurface;
+
+/**
+ * Class that updates the display of the space on its own thread at a fixed
+ * frame rate, so the simulation never waits for Swing painting.
+ * The state of the space is double buffered: when a frame is due, the
+ * simulation thread copies the grass and rabbits into the back buffer, unless
+ * the renderer has not taken the previous one yet, in which case the frame is
+ * dropped. The front buffer is the only state the displays see, and it is
+ * only written on the Swing event thread, where Repast paints the displays
+ * and reads the probes: the render thread hands the copy of the back buffer
+ * to that thread, so it never happens during a paint, and then repaints.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class DisplayRenderer {
+	private final Frame back;
+	private final Frame front;
+	private final AtomicBoolean ready = new AtomicBoolean(false);
+	private final long frameNanos;
+	private final DisplaySurface displaySurf;
+	private final Runnable takeFrame;
+	private ScheduledExecutorService executor;
+	private long nextFrame;
+
+	/**
+	 * Copy of the part of the space that is displayed
+	 */
+	private static class Frame {
+		final GrassGrid grass;
+		final RabbitPopulation rabbits;
+		final RabbitGrid rabbitGrid;
+
+		Frame(int sizeX, int sizeY) {
+			grass = new GrassGrid(sizeX, sizeY);
+			rabbits = new RabbitPopulation();
+			rabbitGrid = new RabbitGrid(sizeX, sizeY, rabbits);
+		}
+
+		void copyFrom(GrassGrid otherGrass, RabbitPopulation otherRabbits, RabbitGrid otherGrid) {
+			grass.copyFrom(otherGrass);
+			rabbits.copyFrom(otherRabbits);
+			rabbitGrid.copyFrom(otherGrid);
+		}
+	}
+
+	/**
+	 * Constructor of the class DisplayRenderer. The front buffer starts with
+	 * the current state of the space, so the displays can be built on it.
+	 * @param space Space that is displayed
+	 * @param framesPerSecond Number of frames painted per second
+	 * @param displaySurf Surface whose displays are built on getGrass, getRabbits and getRabbitGrid
+	 */
+	public DisplayRenderer(RabbitsGrassSimulationSpace space, int framesPerSecond, DisplaySurface displaySurf) {
+		GrassGrid grass = space.getCurrentGrassSpace();
+		this.back = new Frame(grass.getSizeX(), grass.getSizeY());
+		this.front = new Frame(grass.getSizeX(), grass.getSizeY());
+		this.frameNanos = 1000000000L / framesPerSecond;
+		this.displaySurf = displaySurf;
+		front.copyFrom(grass, space.getRabbits(), space.getCurrentRabbitSpace());
+		this.takeFrame = new Runnable() {
+			public void run() {
+				front.copyFrom(back.grass, back.rabbits, back.rabbitGrid);
+				// Hands the back buffer over to the simulation thread again
+				ready.set(false);
+			}
+		};
+	}
+
+	/**
+	 * @return GrassGrid Grass shown by the displays
+	 */
+	public GrassGrid getGrass() {
+		return front.grass;
+	}
+
+	/**
+	 * @return RabbitPopulation Rabbits shown by the displays
+	 */
+	public RabbitPopulation getRabbits() {
+		return front.rabbits;
+	}
+
+	/**
+	 * @return RabbitGrid Cells of the rabbits shown by the displays
+	 */
+	public RabbitGrid getRabbitGrid() {
+		return front.rabbitGrid;
+	}
+
+	/**
+	 * Start painting frames on a daemon thread
+	 */
+	public void start() {
+		executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Rabbits display renderer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				render();
+			}
+		}, 0, frameNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stop painting frames, waiting for the current one to finish
+	 */
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+			try {
+				executor.awaitTermination(1, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			executor = null;
+		}
+	}
+
+	/**
+	 * Called by the simulation thread after every tick. Copies the space
+	 * into the back buffer if a frame is due and the renderer took the
+	 * previous one; never waits for the render thread.
+	 * @param space Space that is displayed
+	 */
+	public void offer(RabbitsGrassSimulationSpace space) {
+		long now = System.nanoTime();
+		if (now - nextFrame < 0 || ready.get()) {
+			return;
+		}
+		back.copyFrom(space.getCurrentGrassSpace(), space.getRabbits(), space.getCurrentRabbitSpace());
+		// Publishes the copy to the render thread
+		ready.set(true);
+		nextFrame = now + frameNanos;
+	}
+
+	/**
+	 * Paint the last state offered by the simulation, if there is a new one
+	 */
+	private void render() {
+		if (!ready.get()) {
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(takeFrame);
+		} catch (InterruptedException e) {
+			// Stopped while waiting for the event thread
+			Thread.currentThread().interrupt();
+			return;
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		displaySurf.updateDisplay();
+	}
+}
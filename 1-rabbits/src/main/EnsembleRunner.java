@@ -0,0 +1,306 @@
+package main;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Class that runs K replicas of the rabbits grass simulation with the same
+ * parameters and consecutive seeds, in lockstep on a fixed set of worker
+ * threads. After every tick the statistics of all replicas are aggregated
+ * into their mean, variance and quantiles, which give confidence bands for
+ * the population and energy of the model. The statistics of a replica are
+ * its number of rabbits, its grass and rabbits energies, the mean energy of
+ * its rabbits and the quantiles of the energy of its rabbits, so the
+ * distribution of the energy across rabbits is aggregated as well.
+ * Every worker steps its own replicas and writes their statistics into
+ * preallocated arrays; a CyclicBarrier waits for all of them and its action
+ * aggregates the tick and writes it to the output file right away, so only
+ * the current tick is kept and memory does not grow with the number of ticks.
+ * The lines are formatted into a reused buffer, so aggregating and writing a
+ * tick allocates nothing.
+ * If a worker fails (with any Throwable), the barrier is reset so the other
+ * workers stop instead of waiting forever, and run reports the failure.
+ * Usage: EnsembleRunner numTicks numReplicas outputFile [Parameter=value ...]
+ * Replica i runs with seed Seed + i (Seed being 1 unless given).
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class EnsembleRunner {
+	public static final int RABBITS = 0;
+	public static final int GRASS_ENERGY = 1;
+	public static final int RABBITS_ENERGY = 2;
+	public static final int MEAN_RABBIT_ENERGY = 3;
+	// Followed by one metric per quantile of the energy of the rabbits of a replica
+	public static final int RABBIT_ENERGY_QUANTILES = 4;
+	private static final double[] QUANTILES = { 0.05, 0.25, 0.5, 0.75, 0.95 };
+	private static final String[] METRICS = { "rabbits", "grass_energy", "rabbits_energy", "mean_rabbit_energy",
+			"rabbit_energy_p5", "rabbit_energy_p25", "rabbit_energy_p50", "rabbit_energy_p75", "rabbit_energy_p95" };
+	// Mean and variance followed by the quantiles
+	private static final int STATISTICS = 2 + QUANTILES.length;
+
+	private final RabbitsGrassSimulationModel[] replicas;
+	private final int numTicks;
+	private final double[][] values;
+	private final double[] sorted;
+	private final double[][] results;
+	private final double[][] energies;
+	private final StringBuilder line = new StringBuilder(1 << 10);
+	private char[] lineChars = new char[1 << 10];
+	private volatile Throwable failure;
+
+	/**
+	 * Constructor of the class EnsembleRunner, which builds the replicas
+	 * @param numTicks Number of ticks simulated by every replica
+	 * @param numReplicas Number of replicas
+	 * @param names Names of the parameters shared by all replicas, as in getInitParam
+	 * @param values Values of the parameters
+	 * @param seed Seed of the first replica
+	 */
+	public EnsembleRunner(int numTicks, int numReplicas, String[] names, String[] values, long seed) {
+		this.numTicks = numTicks;
+		this.replicas = new RabbitsGrassSimulationModel[numReplicas];
+		for (int i = 0; i < numReplicas; i++) {
+			replicas[i] = new RabbitsGrassSimulationModel();
+			for (int j = 0; j < names.length; j++) {
+				replicas[i].setParameter(names[j], values[j]);
+			}
+			replicas[i].setSeed(seed + i);
+			replicas[i].buildHeadless();
+		}
+		this.values = new double[METRICS.length][numReplicas];
+		this.sorted = new double[numReplicas];
+		this.results = new double[METRICS.length][STATISTICS];
+		this.energies = new double[numReplicas][0];
+	}
+
+	/**
+	 * Store the statistics of one replica for the current tick
+	 * @param replica Number of the replica
+	 */
+	private void collect(int replica) {
+		RabbitsGrassSimulationSpace space = replicas[replica].getSpace();
+		int rabbits = space.getNumRabbits();
+		values[RABBITS][replica] = rabbits;
+		values[GRASS_ENERGY][replica] = space.getTotalGrassEnergy();
+		values[RABBITS_ENERGY][replica] = space.getTotalRabbitsEnergy();
+		values[MEAN_RABBIT_ENERGY][replica] = (rabbits > 0) ? (double) space.getTotalRabbitsEnergy() / rabbits : 0;
+
+		// The buffer of every replica only grows, so the population is copied without allocating
+		RabbitPopulation population = space.getRabbits();
+		if (energies[replica].length < rabbits) {
+			energies[replica] = new double[Math.max(rabbits, 2 * energies[replica].length)];
+		}
+		double[] energy = energies[replica];
+		for (int slot = 0; slot < rabbits; slot++) {
+			energy[slot] = population.getEnergy(slot);
+		}
+		Arrays.sort(energy, 0, rabbits);
+		for (int q = 0; q < QUANTILES.length; q++) {
+			values[RABBIT_ENERGY_QUANTILES + q][replica] = (rabbits > 0) ? quantile(energy, rabbits, QUANTILES[q]) : 0;
+		}
+	}
+
+	/**
+	 * @param sorted Values in ascending order
+	 * @param count Number of values, at least 1
+	 * @param quantile Quantile in [0, 1]
+	 * @return double Quantile of the values, interpolated linearly between the closest ranks
+	 */
+	private static double quantile(double[] sorted, int count, double quantile) {
+		double rank = quantile * (count - 1);
+		int below = (int) rank;
+		int above = Math.min(count - 1, below + 1);
+		return sorted[below] + (rank - below) * (sorted[above] - sorted[below]);
+	}
+
+	/**
+	 * Aggregate the statistics of all replicas for the current tick
+	 */
+	private void aggregate() {
+		int k = replicas.length;
+		for (int metric = 0; metric < METRICS.length; metric++) {
+			double[] result = results[metric];
+			double sum = 0;
+			for (int i = 0; i < k; i++) {
+				sum += values[metric][i];
+			}
+			double mean = sum / k;
+			double squares = 0;
+			for (int i = 0; i < k; i++) {
+				double diff = values[metric][i] - mean;
+				squares += diff * diff;
+			}
+			result[0] = mean;
+			result[1] = (k > 1) ? squares / (k - 1) : 0;
+
+			System.arraycopy(values[metric], 0, sorted, 0, k);
+			Arrays.sort(sorted);
+			for (int q = 0; q < QUANTILES.length; q++) {
+				result[2 + q] = quantile(sorted, k, QUANTILES[q]);
+			}
+		}
+	}
+
+	/**
+	 * Write the header of the CSV output
+	 * @param out Writer of the output file
+	 * @throws IOException If the file cannot be written
+	 */
+	private static void writeHeader(Writer out) throws IOException {
+		out.write("tick");
+		for (String metric : METRICS) {
+			out.write("," + metric + "_mean," + metric + "_variance");
+			for (double quantile : QUANTILES) {
+				out.write("," + metric + "_p" + Math.round(quantile * 100));
+			}
+		}
+		out.write(System.lineSeparator());
+	}
+
+	/**
+	 * Write the aggregated statistics of the current tick as a CSV line,
+	 * formatted into a reused buffer rather than into a String per value
+	 * @param out Writer of the output file
+	 * @param tick Tick that has just been aggregated
+	 * @throws IOException If the file cannot be written
+	 */
+	private void writeTick(Writer out, int tick) throws IOException {
+		line.setLength(0);
+		line.append(tick);
+		for (int metric = 0; metric < METRICS.length; metric++) {
+			for (int statistic = 0; statistic < STATISTICS; statistic++) {
+				line.append(',').append(results[metric][statistic]);
+			}
+		}
+		line.append(System.lineSeparator());
+		if (lineChars.length < line.length()) {
+			lineChars = new char[2 * line.length()];
+		}
+		line.getChars(0, line.length(), lineChars, 0);
+		out.write(lineChars, 0, line.length());
+	}
+
+	/**
+	 * Simulate all the replicas, writing the aggregated statistics of every tick as CSV
+	 * @param numThreads Number of worker threads, each one owning every numThreads-th replica
+	 * @param fileName Path of the output file
+	 * @throws IOException If the file cannot be written
+	 */
+	public void run(int numThreads, String fileName) throws IOException {
+		final BufferedWriter out = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+		try {
+			run(numThreads, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	private void run(int numThreads, final Writer out) throws IOException {
+		final int workers = Math.max(1, Math.min(numThreads, replicas.length));
+		for (int i = 0; i < replicas.length; i++) {
+			collect(i);
+		}
+		aggregate();
+		writeHeader(out);
+		writeTick(out, 0);
+
+		final int[] tick = { 1 };
+		final CyclicBarrier barrier = new CyclicBarrier(workers, new Runnable() {
+			public void run() {
+				aggregate();
+				try {
+					writeTick(out, tick[0]);
+				} catch (IOException e) {
+					// Breaks the barrier, the worker that tripped it reports the failure
+					throw new UncheckedIOException(e);
+				}
+				tick[0]++;
+			}
+		});
+
+		Thread[] threads = new Thread[workers];
+		for (int w = 0; w < workers; w++) {
+			final int worker = w;
+			threads[w] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int t = 1; t <= numTicks; t++) {
+							for (int i = worker; i < replicas.length; i += workers) {
+								replicas[i].tick();
+								collect(i);
+							}
+							barrier.await();
+						}
+					} catch (InterruptedException e) {
+						failure = e;
+					} catch (BrokenBarrierException e) {
+						// Another worker failed, its exception is reported
+					} catch (Throwable e) {
+						// Also errors such as OutOfMemoryError, so the other workers never wait forever
+						failure = e;
+						barrier.reset();
+					}
+				}
+			}, "Ensemble worker " + w);
+			threads[w].start();
+		}
+
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+		}
+		if (failure instanceof UncheckedIOException) {
+			throw ((UncheckedIOException) failure).getCause();
+		}
+		if (failure != null) {
+			throw new RuntimeException("Ensemble run failed", failure);
+		}
+	}
+
+	/**
+	 * @param metric One of RABBITS, GRASS_ENERGY, RABBITS_ENERGY and MEAN_RABBIT_ENERGY, or
+	 * RABBIT_ENERGY_QUANTILES + q for the q-th quantile (5%, 25%, 50%, 75% and 95%) of the energy of the rabbits
+	 * @return double[] Mean, variance and quantiles 5%, 25%, 50%, 75% and 95% over the replicas,
+	 * at the last tick simulated
+	 */
+	public double[] getStatistics(int metric) {
+		return results[metric];
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage: EnsembleRunner numTicks numReplicas outputFile [Parameter=value ...]");
+			return;
+		}
+
+		long seed = 1;
+		String[] names = new String[args.length - 3];
+		String[] values = new String[args.length - 3];
+		for (int i = 3; i < args.length; i++) {
+			String[] param = args[i].split("=", 2);
+			names[i - 3] = param[0];
+			values[i - 3] = param[1];
+			if (param[0].equals("Seed")) {
+				seed = Long.parseLong(param[1]);
+			}
+		}
+
+		int numTicks = Integer.parseInt(args[0]);
+		EnsembleRunner ensemble = new EnsembleRunner(numTicks, Integer.parseInt(args[1]), names, values, seed);
+		long start = System.nanoTime();
+		ensemble.run(Runtime.getRuntime().availableProcessors(), args[2]);
+		long end = System.nanoTime();
+		System.out.println(args[1] + " replicas of " + numTicks + " ticks simulated in " + (end - start) * 1e-9 + "s");
+	}
+
+}
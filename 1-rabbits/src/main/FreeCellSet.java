@@ -0,0 +1,156 @@
+package main;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Class that keeps the set of cells of the space without rabbit, identified
+ * by their index y * sizeX + x. The free cells are stored densely in an array
+ * and every cell knows its position in it, so adding, removing and drawing a
+ * uniformly random free cell are all O(1), no matter how full the grid is.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class FreeCellSet {
+	private static final int ABSENT = -1;
+
+	private final int[] cells;
+	private final int[] position;
+	private int size;
+
+	/**
+	 * Constructor of the class FreeCellSet. All cells start free.
+	 * @param numCells Number of cells of the space
+	 */
+	public FreeCellSet(int numCells) {
+		cells = new int[numCells];
+		position = new int[numCells];
+		for (int i = 0; i < numCells; i++) {
+			cells[i] = i;
+			position[i] = i;
+		}
+		size = numCells;
+	}
+
+	/**
+	 * @param cell Index of the cell
+	 * @return boolean True if the cell is free
+	 */
+	public boolean contains(int cell) {
+		return position[cell] != ABSENT;
+	}
+
+	/**
+	 * Mark a cell as free. The cell must not be free already.
+	 * @param cell Index of the cell
+	 */
+	public void add(int cell) {
+		cells[size] = cell;
+		position[cell] = size;
+		size++;
+	}
+
+	/**
+	 * Mark a cell as occupied, moving the last free cell into its position.
+	 * The cell must be free.
+	 * @param cell Index of the cell
+	 */
+	public void remove(int cell) {
+		int index = position[cell];
+		size--;
+		int last = cells[size];
+		cells[index] = last;
+		position[last] = index;
+		position[cell] = ABSENT;
+	}
+
+	/**
+	 * Update the set after a rabbit moves from one cell to a free one:
+	 * the new cell takes the place of the old one in the array, so only
+	 * the entries of both cells are touched.
+	 * @param from Index of the cell that becomes free
+	 * @param to Index of the free cell that becomes occupied
+	 */
+	public void move(int from, int to) {
+		int index = position[to];
+		cells[index] = from;
+		position[from] = index;
+		position[to] = ABSENT;
+	}
+
+	/**
+	 * @param random Random number generator of the simulation
+	 * @return int Index of a free cell drawn uniformly. The set must not be empty.
+	 */
+	public int sample(RandomSource random) {
+		return cells[random.nextInt(size)];
+	}
+
+	/**
+	 * Draw distinct free cells uniformly and mark them as occupied, with a
+	 * partial Fisher-Yates shuffle: every drawn cell is swapped with the last
+	 * cell not drawn yet, so the drawn cells pile up at the end of the array
+	 * and are cut off at once.
+	 * @param random Random number generator of the simulation
+	 * @param count Number of cells to draw, at most size()
+	 * @param out Array where the drawn cells are written, in out[0, count)
+	 */
+	public void removeRandom(RandomSource random, int count, int[] out) {
+		for (int i = 0; i < count; i++) {
+			int last = size - 1 - i;
+			int index = random.nextInt(last + 1);
+			int cell = cells[index];
+			cells[index] = cells[last];
+			position[cells[index]] = index;
+			cells[last] = cell;
+			position[cell] = ABSENT;
+			out[i] = cell;
+		}
+		size -= count;
+	}
+
+	/**
+	 * @return int Number of free cells
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return long Bytes taken by writeTo
+	 */
+	long checkpointBytes() {
+		return 4 + 4L * size;
+	}
+
+	/**
+	 * Write the free cells in their current order, so that sampling after
+	 * a restore gives the same cells as without the checkpoint
+	 * @param out Stream where the free cells are written
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	void writeTo(CheckpointStream out) throws IOException {
+		out.putInt(size);
+		out.putInts(cells, size);
+	}
+
+	/**
+	 * @param in Stream from where the free cells are read
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	void readFrom(CheckpointStream in) throws IOException {
+		size = in.getInt();
+		in.getInts(cells, size);
+		Arrays.fill(position, ABSENT);
+		for (int i = 0; i < size; i++) {
+			position[cells[i]] = i;
+		}
+	}
+
+	/**
+	 * @return boolean True if every cell is occupied
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+}
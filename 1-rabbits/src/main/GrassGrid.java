@@ -0,0 +1,147 @@
+package main;
+
+import java.awt.Dimension;
+import java.io.IOException;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+/**
+ * Class that stores the grass energy of every cell of the space as primitive
+ * shorts in a ChunkedShortGrid, outside of the heap, so a cell takes 2 bytes.
+ * The energy of a cell is at most MAX_ENERGY. Reading and writing a cell
+ * does not box, so the simulation step does not allocate.
+ * It also implements Discrete2DSpace so it can be handed to a Value2DDisplay.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class GrassGrid implements Discrete2DSpace {
+	public static final int MAX_ENERGY = ChunkedShortGrid.MAX_VALUE;
+
+	private final int sizeX;
+	private final int sizeY;
+	private final ChunkedShortGrid energy;
+	private final BaseMatrix matrix;
+
+	/**
+	 * Constructor of the class GrassGrid. All cells start without grass.
+	 * @param sizeX Number of cells in the x axis
+	 * @param sizeY Number of cells in the y axis
+	 */
+	public GrassGrid(int sizeX, int sizeY) {
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.energy = new ChunkedShortGrid(sizeX, sizeY);
+		this.matrix = new GrassMatrix();
+	}
+
+	/**
+	 * @param x This is the x coordinate
+	 * @param y This is the y coordinate
+	 * @return int Energy of the grass in (x, y)
+	 */
+	public int get(int x, int y) {
+		return energy.get(x, y);
+	}
+
+	/**
+	 * @param x This is the x coordinate
+	 * @param y This is the y coordinate
+	 * @param value New energy of the grass in (x, y), at most MAX_ENERGY
+	 */
+	public void set(int x, int y, int value) {
+		energy.set(x, y, value);
+	}
+
+	/**
+	 * Copy the energy of every cell of a grid of the same size
+	 * @param other Grid that is copied
+	 */
+	public void copyFrom(GrassGrid other) {
+		energy.copyFrom(other.energy);
+	}
+
+	/**
+	 * @param out Stream where the energy of every cell is written
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	void writeTo(CheckpointStream out) throws IOException {
+		energy.writeTo(out);
+	}
+
+	/**
+	 * @param in Stream from where the energy of every cell is read
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	void readFrom(CheckpointStream in) throws IOException {
+		energy.readFrom(in);
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	public Dimension getSize() {
+		return new Dimension(sizeX, sizeY);
+	}
+
+	public Object getObjectAt(int x, int y) {
+		return Integer.valueOf(get(x, y));
+	}
+
+	public double getValueAt(int x, int y) {
+		return get(x, y);
+	}
+
+	public void putObjectAt(int x, int y, Object value) {
+		throw new UnsupportedOperationException("Grass is changed through RabbitsGrassSimulationSpace");
+	}
+
+	public void putValueAt(int x, int y, double value) {
+		throw new UnsupportedOperationException("Grass is changed through RabbitsGrassSimulationSpace");
+	}
+
+	public BaseMatrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Read-only view used by the Repast displays, which access the cells
+	 * through a BaseMatrix. Values are returned as Integer, which are cached
+	 * by the JVM for the usual grass energy levels. Writes are rejected, since
+	 * they would bypass the total grass energy kept by the space.
+	 */
+	private class GrassMatrix implements BaseMatrix {
+
+		public Object get(int x, int y) {
+			return Integer.valueOf(GrassGrid.this.get(x, y));
+		}
+
+		public void put(int x, int y, Object value) {
+			putObjectAt(x, y, value);
+		}
+
+		public Object remove(int x, int y) {
+			throw new UnsupportedOperationException("Grass is eaten through RabbitsGrassSimulationSpace");
+		}
+
+		public int size() {
+			return (int) Math.min(Integer.MAX_VALUE, energy.getNumCells());
+		}
+
+		public int getNumRows() {
+			return sizeY;
+		}
+
+		public int getNumCols() {
+			return sizeX;
+		}
+
+		public void trim() {
+		}
+	}
+}
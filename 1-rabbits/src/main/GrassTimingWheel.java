@@ -0,0 +1,144 @@
+package main;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Class that schedules the deterministic regrowth of grass: a cell that is
+ * eaten grows back to the maximum energy exactly delay ticks later.
+ * The pending cells are kept in a timing wheel of delay + 1 buckets, one per
+ * tick, so scheduling a cell and advancing one tick cost O(1) per cell,
+ * independently of the size of the grid.
+ * A cell is scheduled at most once: while it waits for regrowth it has no
+ * grass, and eating it again does not change its regrowth time.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class GrassTimingWheel {
+	private final int delay;
+	private final int[][] buckets;
+	private final int[] bucketSize;
+	private final boolean[] pending;
+	private long now;
+
+	/**
+	 * Constructor of the class GrassTimingWheel
+	 * @param numCells Number of cells of the space
+	 * @param delay Number of ticks between a cell being eaten and its regrowth, at least 1
+	 */
+	public GrassTimingWheel(int numCells, int delay) {
+		if (delay < 1) {
+			throw new IllegalArgumentException("Regrowth delay must be at least 1 tick");
+		}
+		this.delay = delay;
+		this.buckets = new int[delay + 1][16];
+		this.bucketSize = new int[delay + 1];
+		this.pending = new boolean[numCells];
+	}
+
+	/**
+	 * @return int Number of ticks between a cell being eaten and its regrowth
+	 */
+	public int getDelay() {
+		return delay;
+	}
+
+	/**
+	 * Schedule the regrowth of a cell after the given number of ticks,
+	 * unless it is already waiting for regrowth
+	 * @param cell Index of the cell
+	 * @param ticks Ticks until regrowth, in [1, delay]
+	 */
+	public void schedule(int cell, int ticks) {
+		if (pending[cell]) {
+			return;
+		}
+		pending[cell] = true;
+		int bucket = (int) ((now + ticks) % buckets.length);
+		if (bucketSize[bucket] == buckets[bucket].length) {
+			buckets[bucket] = Arrays.copyOf(buckets[bucket], 2 * buckets[bucket].length);
+		}
+		buckets[bucket][bucketSize[bucket]++] = cell;
+	}
+
+	/**
+	 * Schedule the regrowth of a cell that has just been eaten. Not thread
+	 * safe: rabbits stepped in parallel record the cells they eat, which are
+	 * scheduled in a fixed order once their phase is over (see TiledStepper).
+	 * @param cell Index of the cell
+	 */
+	public void eaten(int cell) {
+		schedule(cell, delay);
+	}
+
+	/**
+	 * @return long Bytes taken by writeTo
+	 */
+	long checkpointBytes() {
+		long bytes = 4 + 8;
+		for (int bucket = 0; bucket < buckets.length; bucket++) {
+			bytes += 4 + 4L * bucketSize[bucket];
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param out Stream where the delay, current tick and pending cells are written
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	void writeTo(CheckpointStream out) throws IOException {
+		out.putInt(delay);
+		out.putLong(now);
+		for (int bucket = 0; bucket < buckets.length; bucket++) {
+			out.putInt(bucketSize[bucket]);
+			out.putInts(buckets[bucket], bucketSize[bucket]);
+		}
+	}
+
+	/**
+	 * Create a wheel from the state written by writeTo
+	 * @param in Stream from where the wheel is read
+	 * @param numCells Number of cells of the space
+	 * @return GrassTimingWheel Wheel with the same pending cells
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	static GrassTimingWheel readFrom(CheckpointStream in, int numCells) throws IOException {
+		GrassTimingWheel wheel = new GrassTimingWheel(numCells, in.getInt());
+		wheel.now = in.getLong();
+		for (int bucket = 0; bucket < wheel.buckets.length; bucket++) {
+			int size = in.getInt();
+			if (size > wheel.buckets[bucket].length) {
+				wheel.buckets[bucket] = new int[size];
+			}
+			in.getInts(wheel.buckets[bucket], size);
+			wheel.bucketSize[bucket] = size;
+			for (int i = 0; i < size; i++) {
+				wheel.pending[wheel.buckets[bucket][i]] = true;
+			}
+		}
+		return wheel;
+	}
+
+	/**
+	 * Move to the next tick
+	 * @param grass Grid where the cells due in this tick are regrown
+	 * @param maxGrassEnergy Energy of the grown cells
+	 * @return long Energy added to the grid
+	 */
+	public long advance(GrassGrid grass, int maxGrassEnergy) {
+		now++;
+		int bucket = (int) (now % buckets.length);
+		int[] cells = buckets[bucket];
+		long added = 0;
+		for (int i = 0; i < bucketSize[bucket]; i++) {
+			int cell = cells[i];
+			pending[cell] = false;
+			int x = cell % grass.getSizeX();
+			int y = cell / grass.getSizeX();
+			added += maxGrassEnergy - grass.get(x, y);
+			grass.set(x, y, maxGrassEnergy);
+		}
+		bucketSize[bucket] = 0;
+		return added;
+	}
+}
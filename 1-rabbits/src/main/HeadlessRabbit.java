@@ -0,0 +1,81 @@
+package main;
+
+import java.io.IOException;
+
+/**
+ * Run the rabbits grass simulation without Repast GUI nor controller.
+ * Usage: HeadlessRabbit numTicks outputFile [--restore=FILE] [--checkpoint=FILE]
+ * [--checkpoint-every=N] [Parameter=value ...]
+ * where the parameters are the ones of RabbitsGrassSimulationModel.getInitParam
+ * and the output file is a CSV if it ends in ".csv", a compressed chunked
+ * history readable by StreamingSeriesReader if it ends in ".rgsc" and binary
+ * otherwise.
+ * With --restore the simulation continues from a checkpoint instead of being
+ * built from scratch. With --checkpoint the final state is saved, and also
+ * every N ticks if --checkpoint-every is given.
+ */
+public class HeadlessRabbit {
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: HeadlessRabbit numTicks outputFile [--restore=FILE] [--checkpoint=FILE] "
+					+ "[--checkpoint-every=N] [Parameter=value ...]");
+			return;
+		}
+
+		RabbitsGrassSimulationModel model = new RabbitsGrassSimulationModel();
+		String restore = null;
+		String checkpoint = null;
+		int checkpointEvery = 0;
+		for (int i = 2; i < args.length; i++) {
+			String[] param = args[i].split("=", 2);
+			if (param[0].equals("--restore")) {
+				restore = param[1];
+			} else if (param[0].equals("--checkpoint")) {
+				checkpoint = param[1];
+			} else if (param[0].equals("--checkpoint-every")) {
+				checkpointEvery = Integer.parseInt(param[1]);
+			} else {
+				model.setParameter(param[0], param[1]);
+			}
+		}
+
+		int numTicks = Integer.parseInt(args[0]);
+		TimeSeriesSink series;
+		if (args[1].endsWith(".rgsc")) {
+			series = new StreamingSeries(1, args[1]);
+		} else {
+			series = new TimeSeriesWriter(args[1]);
+		}
+		long start = System.nanoTime();
+		try {
+			if (restore != null) {
+				model.restoreCheckpoint(restore);
+			} else {
+				model.buildHeadless();
+			}
+			model.record(series);
+			// Run in chunks of checkpointEvery ticks, saving after each of them
+			int chunk = (checkpoint != null && checkpointEvery > 0) ? checkpointEvery : numTicks;
+			boolean running = true;
+			for (int done = 0; done < numTicks && running; done += chunk) {
+				running = model.runTicks(Math.min(chunk, numTicks - done), series);
+				if (checkpoint != null) {
+					model.saveCheckpoint(checkpoint);
+				}
+			}
+			if (checkpoint != null && numTicks == 0) {
+				model.saveCheckpoint(checkpoint);
+			}
+		} finally {
+			series.close();
+			model.closeProfiler();
+		}
+		long end = System.nanoTime();
+		if (model.getStopReason() != null) {
+			System.out.println("Stopped at tick " + model.getTicksSimulated() + ": " + model.getStopReason());
+		}
+		System.out.println(numTicks + " ticks simulated in " + (end - start) * 1e-9 + "s");
+	}
+
+}
@@ -0,0 +1,231 @@
+package main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that runs a sweep over the parameters of the rabbits grass simulation.
+ * Every point of the cartesian product of the parameter ranges is simulated
+ * headless in its own model instance, with its own seed, on a fork-join pool,
+ * and summarized with a RunSummary.
+ * Usage: ParameterSweep numTicks outputFile [Parameter=range ...]
+ * where a range is either "from:to:step" (both ends included) or a comma
+ * separated list of values, e.g. GridSize=20:100:20 BirthThreshold=10,15,20.
+ * Unless Seed is swept too, the point number i (from 0) runs with seed i + 1.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class ParameterSweep {
+	private final int numTicks;
+	private final List<String> names = new ArrayList<String>();
+	private List<String[]> points = new ArrayList<String[]>();
+
+	/**
+	 * Constructor of the class ParameterSweep. Without ranges the sweep has
+	 * a single point with the default parameters.
+	 * @param numTicks Number of ticks simulated for each point
+	 */
+	public ParameterSweep(int numTicks) {
+		this.numTicks = numTicks;
+		points.add(new String[0]);
+	}
+
+	/**
+	 * Add one parameter to the sweep, multiplying the number of points by
+	 * the number of values in its range
+	 * @param name Name of the parameter as in getInitParam
+	 * @param range Either "from:to:step" or a comma separated list of values
+	 */
+	public void addRange(String name, String range) {
+		List<String> values = new ArrayList<String>();
+		if (range.contains(":")) {
+			String[] bounds = range.split(":");
+			long from = Long.parseLong(bounds[0]);
+			long to = Long.parseLong(bounds[1]);
+			long step = (bounds.length > 2) ? Long.parseLong(bounds[2]) : 1;
+			if (step <= 0) {
+				throw new IllegalArgumentException("Step of " + name + " must be positive");
+			}
+			for (long value = from; value <= to; value += step) {
+				values.add(Long.toString(value));
+			}
+		} else {
+			for (String value : range.split(",")) {
+				values.add(value.trim());
+			}
+		}
+
+		List<String[]> extended = new ArrayList<String[]>();
+		for (String[] point : points) {
+			for (String value : values) {
+				String[] next = new String[point.length + 1];
+				System.arraycopy(point, 0, next, 0, point.length);
+				next[point.length] = value;
+				extended.add(next);
+			}
+		}
+		names.add(name);
+		points = extended;
+	}
+
+	/**
+	 * @return List Values of the swept parameters for every point, in the order they were added
+	 */
+	public List<String[]> getPoints() {
+		return points;
+	}
+
+	/**
+	 * @return List Names of the swept parameters
+	 */
+	public List<String> getNames() {
+		return names;
+	}
+
+	/**
+	 * @param index Number of the point in the sweep
+	 * @return long Seed used for the point unless Seed is one of the swept parameters
+	 */
+	public long getSeed(int index) {
+		return index + 1;
+	}
+
+	/**
+	 * Simulate one point of the sweep in a fresh model
+	 * @param index Number of the point in the sweep
+	 * @return RunSummary Statistics of the run
+	 */
+	public RunSummary runPoint(int index) throws IOException {
+		RabbitsGrassSimulationModel model;
+		// The constructor of SimModelImpl reseeds the static generator of Repast,
+		// which is not thread safe. Nothing else in a headless run touches it.
+		synchronized (ParameterSweep.class) {
+			model = new RabbitsGrassSimulationModel();
+		}
+		model.setSeed(getSeed(index));
+		String[] values = points.get(index);
+		for (int i = 0; i < values.length; i++) {
+			model.setParameter(names.get(i), values[i]);
+		}
+
+		RunSummary summary = new RunSummary();
+		model.runHeadless(numTicks, summary);
+		summary.setEndReason(model.getStopReason());
+		return summary;
+	}
+
+	/**
+	 * Simulate all the points of the sweep concurrently
+	 * @param pool Fork-join pool where the runs are executed
+	 * @return RunSummary[] Statistics of every point, in the order of getPoints
+	 */
+	public RunSummary[] run(ForkJoinPool pool) {
+		RunSummary[] summaries = new RunSummary[points.size()];
+		pool.invoke(new SweepTask(summaries, 0, points.size()));
+		return summaries;
+	}
+
+	/**
+	 * Task that splits a range of points of the sweep in halves until a single
+	 * point is left, which is then simulated
+	 */
+	private class SweepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final RunSummary[] summaries;
+		private final int from;
+		private final int to;
+
+		SweepTask(RunSummary[] summaries, int from, int to) {
+			this.summaries = summaries;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				try {
+					summaries[from] = runPoint(from);
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new SweepTask(summaries, from, middle), new SweepTask(summaries, middle, to));
+			}
+		}
+	}
+
+	/**
+	 * Build a sweep from the arguments of the command line
+	 * @param numTicks Number of ticks simulated for each point
+	 * @param args Arguments of the command line
+	 * @param first Position of the first "Parameter=range" argument
+	 * @return ParameterSweep Sweep over the given ranges
+	 */
+	public static ParameterSweep fromArgs(String numTicks, String[] args, int first) {
+		ParameterSweep sweep = new ParameterSweep(Integer.parseInt(numTicks));
+		for (int i = first; i < args.length; i++) {
+			String[] param = args[i].split("=", 2);
+			sweep.addRange(param[0], param[1]);
+		}
+		return sweep;
+	}
+
+	/**
+	 * @return String Header of the CSV file with the results of the sweep
+	 */
+	public String getHeader() {
+		StringBuilder header = new StringBuilder();
+		for (String name : names) {
+			header.append(name).append(',');
+		}
+		return header.append("seed,").append(RunSummary.HEADER).toString();
+	}
+
+	/**
+	 * @param index Number of the point in the sweep
+	 * @param summary Statistics of the run of the point
+	 * @return String Line of the CSV file with the parameters and results of the point
+	 */
+	public String toCsv(int index, RunSummary summary) {
+		StringBuilder line = new StringBuilder();
+		String[] values = points.get(index);
+		for (String value : values) {
+			line.append(value).append(',');
+		}
+		int seedIndex = names.indexOf("Seed");
+		line.append(seedIndex >= 0 ? values[seedIndex] : Long.toString(getSeed(index)));
+		return line.append(',').append(summary.toCsv()).toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: ParameterSweep numTicks outputFile [Parameter=range ...]");
+			return;
+		}
+
+		ParameterSweep sweep = fromArgs(args[0], args, 2);
+
+		long start = System.nanoTime();
+		RunSummary[] summaries = sweep.run(ForkJoinPool.commonPool());
+		long end = System.nanoTime();
+
+		PrintWriter out = new PrintWriter(new FileWriter(args[1]));
+		try {
+			out.println(sweep.getHeader());
+			for (int i = 0; i < summaries.length; i++) {
+				out.println(sweep.toCsv(i, summaries[i]));
+			}
+		} finally {
+			out.close();
+		}
+		System.out.println(summaries.length + " runs simulated in " + (end - start) * 1e-9 + "s");
+	}
+}
@@ -0,0 +1,157 @@
+package main;
+
+import java.awt.Dimension;
+
+import uchicago.src.collection.BaseMatrix;
+import uchicago.src.sim.space.Discrete2DSpace;
+
+/**
+ * Class that stores which rabbit occupies every cell of the space, as the
+ * slot of the rabbit in the RabbitPopulation (or EMPTY), in a ChunkedIntGrid
+ * outside of the heap. It also implements
+ * Discrete2DSpace so it can be handed to an Object2DDisplay, which gets
+ * lightweight agents over the population.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class RabbitGrid implements Discrete2DSpace {
+	public static final int EMPTY = -1;
+
+	private final int sizeX;
+	private final int sizeY;
+	private final ChunkedIntGrid slots;
+	private final RabbitPopulation rabbits;
+	private final BaseMatrix matrix;
+
+	/**
+	 * Constructor of the class RabbitGrid. All cells start empty.
+	 * @param sizeX Number of cells in the x axis
+	 * @param sizeY Number of cells in the y axis
+	 * @param rabbits Population whose slots are stored in the grid
+	 */
+	public RabbitGrid(int sizeX, int sizeY, RabbitPopulation rabbits) {
+		this.sizeX = sizeX;
+		this.sizeY = sizeY;
+		this.slots = new ChunkedIntGrid(sizeX, sizeY);
+		this.rabbits = rabbits;
+		this.matrix = new RabbitMatrix();
+		slots.fill(EMPTY);
+	}
+
+	/**
+	 * @param x This is the x coordinate
+	 * @param y This is the y coordinate
+	 * @return int Slot of the rabbit in (x, y) or EMPTY
+	 */
+	public int get(int x, int y) {
+		return slots.get(x, y);
+	}
+
+	/**
+	 * @param x This is the x coordinate
+	 * @param y This is the y coordinate
+	 * @param slot Slot of the rabbit in (x, y) or EMPTY
+	 */
+	public void set(int x, int y, int slot) {
+		slots.set(x, y, slot);
+	}
+
+	/**
+	 * Copy the slots of a grid of the same size
+	 * @param other Grid that is copied
+	 */
+	public void copyFrom(RabbitGrid other) {
+		slots.copyFrom(other.slots);
+	}
+
+	/**
+	 * Mark every cell as empty
+	 */
+	public void clear() {
+		slots.fill(EMPTY);
+	}
+
+	/**
+	 * @param x Any x coordinate, e.g. one step beyond a border
+	 * @return int Same column of the torus in [0, sizeX)
+	 */
+	public int wrapX(int x) {
+		return slots.wrapX(x);
+	}
+
+	/**
+	 * @param y Any y coordinate, e.g. one step beyond a border
+	 * @return int Same row of the torus in [0, sizeY)
+	 */
+	public int wrapY(int y) {
+		return slots.wrapY(y);
+	}
+
+	public int getSizeX() {
+		return sizeX;
+	}
+
+	public int getSizeY() {
+		return sizeY;
+	}
+
+	public Dimension getSize() {
+		return new Dimension(sizeX, sizeY);
+	}
+
+	public Object getObjectAt(int x, int y) {
+		int slot = get(x, y);
+		return (slot == EMPTY) ? null : rabbits.getAgent(slot);
+	}
+
+	public double getValueAt(int x, int y) {
+		int slot = get(x, y);
+		return (slot == EMPTY) ? 0 : rabbits.getEnergy(slot);
+	}
+
+	public void putObjectAt(int x, int y, Object value) {
+		throw new UnsupportedOperationException("Rabbits are moved through RabbitsGrassSimulationSpace");
+	}
+
+	public void putValueAt(int x, int y, double value) {
+		throw new UnsupportedOperationException("Rabbits are moved through RabbitsGrassSimulationSpace");
+	}
+
+	public BaseMatrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Read-only view used by the Repast displays, which access the cells
+	 * through a BaseMatrix
+	 */
+	private class RabbitMatrix implements BaseMatrix {
+
+		public Object get(int x, int y) {
+			return getObjectAt(x, y);
+		}
+
+		public void put(int x, int y, Object value) {
+			putObjectAt(x, y, value);
+		}
+
+		public Object remove(int x, int y) {
+			throw new UnsupportedOperationException("Rabbits are removed through RabbitsGrassSimulationSpace");
+		}
+
+		public int size() {
+			return (int) Math.min(Integer.MAX_VALUE, slots.getNumCells());
+		}
+
+		public int getNumRows() {
+			return sizeY;
+		}
+
+		public int getNumCols() {
+			return sizeX;
+		}
+
+		public void trim() {
+		}
+	}
+}
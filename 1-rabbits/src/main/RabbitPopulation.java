@@ -0,0 +1,297 @@
+package main;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class that stores the rabbits of the simulation as a structure of arrays:
+ * the position, energy and identifier of the rabbit in slot i are
+ * x[i], y[i], energy[i] and id[i]. Living rabbits always occupy the slots
+ * [0, size), so a death is removed in O(1) by moving the last rabbit into
+ * the slot of the dead one.
+ * Births and deaths only write into the arrays, so once they have grown to
+ * the largest population of the run the lifecycle allocates nothing. The
+ * agents used by Repast are views over a slot, created once per slot and
+ * reused for the rest of the run.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class RabbitPopulation {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] x;
+	private int[] y;
+	private int[] energy;
+	private long[] id;
+	private int[] order;
+	private RabbitsGrassSimulationAgent[] agents = new RabbitsGrassSimulationAgent[0];
+	private List<RabbitsGrassSimulationAgent> agentList;
+	private int size;
+	private long totalEnergy;
+
+	/**
+	 * Constructor of the class RabbitPopulation. The arrays grow
+	 * (doubling their length) when the population exceeds their capacity.
+	 */
+	public RabbitPopulation() {
+		x = new int[INITIAL_CAPACITY];
+		y = new int[INITIAL_CAPACITY];
+		energy = new int[INITIAL_CAPACITY];
+		id = new long[INITIAL_CAPACITY];
+		order = new int[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Add a rabbit at the end of the population
+	 * @param rabbitID Unique identifier of the rabbit
+	 * @param rabbitX x coordinate where the rabbit is located
+	 * @param rabbitY y coordinate where the rabbit is located
+	 * @param rabbitEnergy Initial energy of the rabbit
+	 * @return int Slot of the new rabbit
+	 */
+	public int add(long rabbitID, int rabbitX, int rabbitY, int rabbitEnergy) {
+		if (size == x.length) {
+			grow(2 * x.length);
+		}
+		x[size] = rabbitX;
+		y[size] = rabbitY;
+		energy[size] = rabbitEnergy;
+		id[size] = rabbitID;
+		totalEnergy += rabbitEnergy;
+		return size++;
+	}
+
+	/**
+	 * Replace the rabbits by a copy of the ones of another population, in the same slots
+	 * @param other Population that is copied
+	 */
+	public void copyFrom(RabbitPopulation other) {
+		if (other.size > x.length) {
+			grow(other.x.length);
+		}
+		System.arraycopy(other.x, 0, x, 0, other.size);
+		System.arraycopy(other.y, 0, y, 0, other.size);
+		System.arraycopy(other.energy, 0, energy, 0, other.size);
+		System.arraycopy(other.id, 0, id, 0, other.size);
+		size = other.size;
+		totalEnergy = other.totalEnergy;
+	}
+
+	private void grow(int capacity) {
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		energy = Arrays.copyOf(energy, capacity);
+		id = Arrays.copyOf(id, capacity);
+		order = Arrays.copyOf(order, capacity);
+	}
+
+	/**
+	 * Remove the rabbit of one slot, moving the last rabbit into it
+	 * @param slot Slot of the rabbit to be removed
+	 * @return boolean True if the last rabbit was moved into slot, so whoever
+	 * references it by slot (e.g. the grid) has to be updated
+	 */
+	public boolean remove(int slot) {
+		totalEnergy -= energy[slot];
+		size--;
+		if (slot == size) {
+			return false;
+		}
+		x[slot] = x[size];
+		y[slot] = y[size];
+		energy[slot] = energy[size];
+		id[slot] = id[size];
+		return true;
+	}
+
+	/**
+	 * Move the rabbit of one slot into another one, whose rabbit is lost.
+	 * The total energy is not updated, so it must be fixed with
+	 * addTotalEnergy. Used to compact the population from several threads.
+	 * @param from Slot of the rabbit that is moved
+	 * @param to Slot where the rabbit is moved
+	 */
+	void moveSlot(int from, int to) {
+		x[to] = x[from];
+		y[to] = y[from];
+		energy[to] = energy[from];
+		id[to] = id[from];
+	}
+
+	/**
+	 * Drop the rabbits of the slots [newSize, size), once the survivors have
+	 * been moved out of them with moveSlot
+	 * @param newSize Number of living rabbits
+	 */
+	void truncate(int newSize) {
+		size = newSize;
+	}
+
+	/**
+	 * Shuffle the order in which the rabbits are visited, without moving them
+	 * @param random Random number generator of the simulation
+	 * @return int[] Permutation of the slots [0, size), valid until the population changes
+	 */
+	public int[] shuffledOrder(RandomSource random) {
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		for (int i = size - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		return order;
+	}
+
+	/**
+	 * @return int Number of living rabbits
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return long Total energy of the living rabbits
+	 */
+	public long getTotalEnergy() {
+		return totalEnergy;
+	}
+
+	public int getX(int slot) {
+		return x[slot];
+	}
+
+	public int getY(int slot) {
+		return y[slot];
+	}
+
+	public void setXY(int slot, int newX, int newY) {
+		x[slot] = newX;
+		y[slot] = newY;
+	}
+
+	public int getEnergy(int slot) {
+		return energy[slot];
+	}
+
+	public void setEnergy(int slot, int newEnergy) {
+		totalEnergy += newEnergy - energy[slot];
+		energy[slot] = newEnergy;
+	}
+
+	/**
+	 * @param slot Slot of the rabbit
+	 * @param delta Energy gained (or lost if negative) by the rabbit
+	 */
+	public void addEnergy(int slot, int delta) {
+		energy[slot] += delta;
+		totalEnergy += delta;
+	}
+
+	/**
+	 * Change the energy of a rabbit without updating the total energy, which
+	 * must then be fixed with addTotalEnergy. Used to step rabbits of
+	 * different slots from several threads at the same time.
+	 * @param slot Slot of the rabbit
+	 * @param delta Energy gained (or lost if negative) by the rabbit
+	 */
+	void addEnergyUntracked(int slot, int delta) {
+		energy[slot] += delta;
+	}
+
+	/**
+	 * @param delta Variation of the total energy not reported by addEnergyUntracked
+	 */
+	void addTotalEnergy(long delta) {
+		totalEnergy += delta;
+	}
+
+	public long getID(int slot) {
+		return id[slot];
+	}
+
+	/**
+	 * @return long Bytes taken by writeTo
+	 */
+	long checkpointBytes() {
+		return 4 + 20L * size;
+	}
+
+	/**
+	 * @param out Stream where the living rabbits are written
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	void writeTo(CheckpointStream out) throws IOException {
+		out.putInt(size);
+		out.putInts(x, size);
+		out.putInts(y, size);
+		out.putInts(energy, size);
+		out.putLongs(id, size);
+	}
+
+	/**
+	 * Replace the living rabbits by the ones in a checkpoint, in the same slots
+	 * @param in Stream from where the rabbits are read
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	void readFrom(CheckpointStream in) throws IOException {
+		size = in.getInt();
+		if (size > x.length) {
+			grow(size);
+		}
+		in.getInts(x, size);
+		in.getInts(y, size);
+		in.getInts(energy, size);
+		in.getLongs(id, size);
+		totalEnergy = 0;
+		for (int i = 0; i < size; i++) {
+			totalEnergy += energy[i];
+		}
+	}
+
+	/**
+	 * Agent over one slot of the population. The agent of every slot is
+	 * created the first time it is asked for and then reused, so it shows
+	 * whichever rabbit occupies the slot at any moment.
+	 * @param slot Slot of the rabbit, in [0, size)
+	 * @return RabbitsGrassSimulationAgent View of the rabbit in slot
+	 */
+	public RabbitsGrassSimulationAgent getAgent(int slot) {
+		if (slot >= agents.length) {
+			agents = Arrays.copyOf(agents, Math.max(slot + 1, x.length));
+		}
+		RabbitsGrassSimulationAgent agent = agents[slot];
+		if (agent == null) {
+			agent = new RabbitsGrassSimulationAgent(this, slot);
+			agents[slot] = agent;
+		}
+		return agent;
+	}
+
+	/**
+	 * List of the agents of the living rabbits (see getAgent), used by the
+	 * Repast displays and histograms. The same list is returned on every
+	 * call and follows the population as rabbits are born or die.
+	 * @return List View of the living rabbits
+	 */
+	public List<RabbitsGrassSimulationAgent> asList() {
+		if (agentList == null) {
+			agentList = new AbstractList<RabbitsGrassSimulationAgent>() {
+				@Override
+				public RabbitsGrassSimulationAgent get(int slot) {
+					return getAgent(slot);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		return agentList;
+	}
+}
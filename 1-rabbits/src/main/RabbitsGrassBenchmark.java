@@ -0,0 +1,349 @@
+package main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Micro-benchmarks of the rabbits grass simulation, run headless without any
+ * Repast GUI class. For every grid size it measures one tick of the model,
+ * from scratch and once the population has settled (where births and deaths
+ * should allocate nothing), spreading grass (per unit and in bulk), adding a rabbit to a near-full grid
+ * and the statistics getters of the space.
+ * Every benchmark is run for some warmup iterations, which are discarded so
+ * that the JIT compiler settles, and then for the measured iterations. The
+ * report gives the mean and standard deviation of the time per operation and
+ * the bytes allocated per operation by the benchmark thread.
+ * Usage: RabbitsGrassBenchmark [outputFile] [--sizes=20,100,500,1000,4000]
+ * [--warmup=5] [--iterations=10] [--density=10]
+ * where density is the percentage of cells that start with a rabbit.
+ * The grids of the space live outside of the Java heap, so large grids are
+ * limited by -XX:MaxDirectMemorySize (which defaults to the maximum heap
+ * size) rather than by -Xmx.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class RabbitsGrassBenchmark {
+	private static final String HEADER = "benchmark,gridSize,opsPerIteration,nsPerOp,nsPerOpStdDev,bytesPerOp";
+	private static final int MAX_GRASS_ENERGY = 10;
+
+	private final int warmup;
+	private final int iterations;
+	private final int density;
+	private final com.sun.management.ThreadMXBean threads;
+	private long sink;
+
+	/**
+	 * Constructor of the class RabbitsGrassBenchmark
+	 * @param warmup Number of discarded iterations of every benchmark
+	 * @param iterations Number of measured iterations of every benchmark
+	 * @param density Percentage of cells that start with a rabbit
+	 */
+	public RabbitsGrassBenchmark(int warmup, int iterations, int density) {
+		this.warmup = warmup;
+		this.iterations = iterations;
+		this.density = density;
+		this.threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	/**
+	 * One benchmark for one grid size. The state is prepared by setup, out of
+	 * the measured time, and run performs getOps operations on it.
+	 */
+	private abstract class Benchmark {
+		final String name;
+		final int gridSize;
+		final long cells;
+
+		Benchmark(String name, int gridSize) {
+			this.name = name;
+			this.gridSize = gridSize;
+			this.cells = (long) gridSize * gridSize;
+		}
+
+		abstract void setup();
+
+		/**
+		 * Release the state of setup, so the largest grids fit twice in memory
+		 */
+		abstract void teardown();
+
+		abstract int getOps();
+
+		/**
+		 * @return long Value derived from the work done, so it is not optimized away
+		 */
+		abstract long run();
+	}
+
+	/**
+	 * Ticks of a headless model with the default sequential stepping
+	 */
+	private class TickBenchmark extends Benchmark {
+		RabbitsGrassSimulationModel model;
+
+		TickBenchmark(int gridSize) {
+			this("tick", gridSize);
+		}
+
+		TickBenchmark(String name, int gridSize) {
+			super(name, gridSize);
+		}
+
+		void setup() {
+			model = new RabbitsGrassSimulationModel();
+			model.setGridSize(gridSize);
+			model.setNumInitRabbits((int) (cells * density / 100));
+			model.setNumInitGrass((int) cells);
+			// Enough grass to keep the population roughly stable
+			model.setGrassGrowthRate((int) (cells / 4));
+			model.setSeed(1);
+			model.buildHeadless();
+		}
+
+		void teardown() {
+			model = null;
+		}
+
+		int getOps() {
+			// Small grids run many ticks per iteration for a stable measure
+			return (int) Math.max(1, Math.min(1000, 1000000 / cells));
+		}
+
+		long run() {
+			for (int i = 0; i < getOps(); i++) {
+				model.tick();
+			}
+			return model.getSpace().getNumRabbits();
+		}
+	}
+
+	/**
+	 * Ticks of a model that has already run long enough for its arrays to
+	 * reach the size of the settled population, so what is measured is the
+	 * steady state of births and deaths
+	 */
+	private class LifecycleBenchmark extends TickBenchmark {
+		private static final int SETTLE_TICKS = 200;
+
+		LifecycleBenchmark(int gridSize) {
+			super("tickSettled", gridSize);
+		}
+
+		void setup() {
+			super.setup();
+			for (int i = 0; i < SETTLE_TICKS; i++) {
+				model.tick();
+			}
+			// Create the agents of every slot, as the displays do
+			for (RabbitsGrassSimulationAgent agent : model.getSpace().getRabbits().asList()) {
+				sink += agent.getEnergy();
+			}
+		}
+	}
+
+	/**
+	 * Units of grass spread one by one or with the bulk multinomial draw
+	 */
+	private class SpreadGrassBenchmark extends Benchmark {
+		private final boolean bulk;
+		private RabbitsGrassSimulationSpace space;
+
+		SpreadGrassBenchmark(int gridSize, boolean bulk) {
+			super(bulk ? "spreadGrassBulk" : "spreadGrass", gridSize);
+			this.bulk = bulk;
+		}
+
+		void setup() {
+			space = new RabbitsGrassSimulationSpace(gridSize, new RandomSource(1));
+		}
+
+		void teardown() {
+			space = null;
+		}
+
+		int getOps() {
+			return 1000000;
+		}
+
+		long run() {
+			if (bulk) {
+				space.spreadGrassBulk(getOps(), MAX_GRASS_ENERGY);
+			} else {
+				space.spreadGrass(getOps(), MAX_GRASS_ENERGY);
+			}
+			return space.getTotalGrassEnergy();
+		}
+	}
+
+	/**
+	 * Rabbits added to a grid where only one cell in a thousand is free,
+	 * each of them removed again so the grid stays near full
+	 */
+	private class AddRabbitBenchmark extends Benchmark {
+		private RabbitsGrassSimulationSpace space;
+
+		AddRabbitBenchmark(int gridSize) {
+			super("addRabbitNearFull", gridSize);
+		}
+
+		void setup() {
+			space = new RabbitsGrassSimulationSpace(gridSize, new RandomSource(1));
+			long full = cells - Math.max(1, cells / 1000);
+			for (int id = 1; id <= full; id++) {
+				space.addRabbit(id, MAX_GRASS_ENERGY);
+			}
+		}
+
+		void teardown() {
+			space = null;
+		}
+
+		int getOps() {
+			return 100000;
+		}
+
+		long run() {
+			long added = 0;
+			for (int i = 0; i < getOps(); i++) {
+				if (space.addRabbit(-1, MAX_GRASS_ENERGY)) {
+					added++;
+				}
+				space.removeRabbit(space.getNumRabbits() - 1);
+			}
+			return added;
+		}
+	}
+
+	/**
+	 * Statistics read by the displays after every tick
+	 */
+	private class StatisticsBenchmark extends Benchmark {
+		private RabbitsGrassSimulationSpace space;
+
+		StatisticsBenchmark(int gridSize) {
+			super("statistics", gridSize);
+		}
+
+		void setup() {
+			space = new RabbitsGrassSimulationSpace(gridSize, new RandomSource(1));
+			space.spreadGrassBulk((int) Math.min(Integer.MAX_VALUE, cells), MAX_GRASS_ENERGY);
+			for (int id = 1; id <= cells * density / 100; id++) {
+				space.addRabbit(id, MAX_GRASS_ENERGY);
+			}
+		}
+
+		void teardown() {
+			space = null;
+		}
+
+		int getOps() {
+			return 10000000;
+		}
+
+		long run() {
+			long total = 0;
+			for (int i = 0; i < getOps(); i++) {
+				total += space.getTotalGrassEnergy() + space.getTotalRabbitsEnergy() + space.getNumRabbits();
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Run the warmup and measured iterations of a benchmark
+	 * @param benchmark Benchmark to be measured
+	 * @return String Line of the report
+	 */
+	private String measure(Benchmark benchmark) {
+		long thread = Thread.currentThread().getId();
+		double sum = 0;
+		double sumSquares = 0;
+		long allocated = 0;
+		for (int i = 0; i < warmup + iterations; i++) {
+			benchmark.setup();
+			long bytesBefore = threads.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			sink += benchmark.run();
+			long end = System.nanoTime();
+			long bytesAfter = threads.getThreadAllocatedBytes(thread);
+			benchmark.teardown();
+			if (i >= warmup) {
+				double nsPerOp = (double) (end - start) / benchmark.getOps();
+				sum += nsPerOp;
+				sumSquares += nsPerOp * nsPerOp;
+				allocated += bytesAfter - bytesBefore;
+			}
+		}
+		double mean = sum / iterations;
+		double std = Math.sqrt(Math.max(0, sumSquares / iterations - mean * mean));
+		double bytesPerOp = (double) allocated / ((long) iterations * benchmark.getOps());
+		return benchmark.name + "," + benchmark.gridSize + "," + benchmark.getOps() + ","
+				+ String.format("%.2f,%.2f,%.3f", mean, std, bytesPerOp);
+	}
+
+	/**
+	 * Run all the benchmarks for one grid size
+	 * @param gridSize Size of the square grid
+	 * @param out Writer of the report
+	 */
+	public void run(int gridSize, PrintWriter out) {
+		Benchmark[] benchmarks = { new TickBenchmark(gridSize), new LifecycleBenchmark(gridSize),
+				new SpreadGrassBenchmark(gridSize, false),
+				new SpreadGrassBenchmark(gridSize, true), new AddRabbitBenchmark(gridSize),
+				new StatisticsBenchmark(gridSize) };
+		for (Benchmark benchmark : benchmarks) {
+			String line = measure(benchmark);
+			System.out.println(line);
+			out.println(line);
+			out.flush();
+		}
+	}
+
+	/**
+	 * @return long Accumulated results of the benchmarks, printed at the end to keep them alive
+	 */
+	public long getSink() {
+		return sink;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String outputFile = null;
+		String sizes = "20,100,500,1000,4000";
+		int warmup = 5;
+		int iterations = 10;
+		int density = 10;
+		for (String arg : args) {
+			String[] param = arg.split("=", 2);
+			if (param[0].equals("--sizes")) {
+				sizes = param[1];
+			} else if (param[0].equals("--warmup")) {
+				warmup = Integer.parseInt(param[1]);
+			} else if (param[0].equals("--iterations")) {
+				iterations = Integer.parseInt(param[1]);
+			} else if (param[0].equals("--density")) {
+				density = Integer.parseInt(param[1]);
+			} else {
+				outputFile = arg;
+			}
+		}
+
+		RabbitsGrassBenchmark benchmark = new RabbitsGrassBenchmark(warmup, iterations, density);
+		PrintWriter out = new PrintWriter(outputFile != null ? new FileWriter(outputFile) : new StringWriter());
+		try {
+			System.out.println(HEADER);
+			out.println(HEADER);
+			for (String size : sizes.split(",")) {
+				benchmark.run(Integer.parseInt(size.trim()), out);
+			}
+		} finally {
+			out.close();
+		}
+		// Printing the results of the benchmarks keeps the JIT compiler from discarding their work
+		System.out.println("Checksum of the results: " + benchmark.getSink());
+	}
+
+}
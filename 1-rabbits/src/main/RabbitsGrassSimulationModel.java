@@ -1,13 +1,12 @@
 package main;
 
 import java.awt.Color;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ForkJoinPool;
 
 import uchicago.src.sim.analysis.BinDataSource;
-import uchicago.src.sim.analysis.DataSource;
 import uchicago.src.sim.analysis.OpenHistogram;
-import uchicago.src.sim.analysis.OpenSequenceGraph;
-import uchicago.src.sim.analysis.Sequence;
 import uchicago.src.sim.engine.BasicAction;
 import uchicago.src.sim.engine.Schedule;
 import uchicago.src.sim.engine.SimModelImpl;
@@ -16,7 +15,6 @@ import uchicago.src.sim.gui.DisplaySurface;
 import uchicago.src.sim.gui.ColorMap;
 import uchicago.src.sim.gui.Object2DDisplay;
 import uchicago.src.sim.gui.Value2DDisplay;
-import uchicago.src.sim.util.SimUtilities;
 
 /**
  * Class that implements the simulation model for the rabbits grass simulation.
@@ -35,6 +33,28 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 	private static final int BIRTHTHRESHOLD = 15;
 	private static final int MAXENERGY = 20;
 	private static final int MAXGRASSENERGY = 10;
+	private static final boolean HEADLESS = false;
+	private static final long SEED = 0;
+	private static final boolean PARALLELSTEP = false;
+	private static final int TILESIZE = 64;
+	private static final int GRASSREGROWTH = 0;
+	private static final int GRASSREGROWTHDELAY = 20;
+	private static final String PROFILEFILE = "";
+	private static final int PROFILEEVERY = 100;
+	private static final int RENDERRATE = 0;
+	private static final int SERIESWINDOW = 1000;
+	private static final int GRIDHEIGHT = 0;
+	private static final boolean STOPONEXTINCTION = false;
+	private static final boolean STOPONSATURATION = false;
+	private static final int STEADYWINDOW = 0;
+	private static final double STEADYTOLERANCE = 0.01;
+	private static final boolean BATCHLIFECYCLE = false;
+	private static final String SERIESFILE = "";
+
+	/** Grass regrowth modes: units spread one by one, units spread in bulk, timing wheel */
+	public static final int REGROWTH_UNITS = 0;
+	public static final int REGROWTH_BULK = 1;
+	public static final int REGROWTH_WHEEL = 2;
 
 	private int GridSize = GRIDSIZE;
 	private int NumInitRabbits = NUMINITRABBITS;
@@ -43,40 +63,46 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 	private int BirthThreshold = BIRTHTHRESHOLD;
 	private int MaxEnergy = MAXENERGY;
 	private int MaxGrassEnergy = MAXGRASSENERGY; 
+	private boolean Headless = HEADLESS;
+	private long Seed = SEED;
+	private boolean ParallelStep = PARALLELSTEP;
+	private int TileSize = TILESIZE;
+	private int GrassRegrowth = GRASSREGROWTH;
+	private int GrassRegrowthDelay = GRASSREGROWTHDELAY;
+	private String ProfileFile = PROFILEFILE;
+	private int ProfileEvery = PROFILEEVERY;
+	private int RenderRate = RENDERRATE;
+	private int SeriesWindow = SERIESWINDOW;
+	private int GridHeight = GRIDHEIGHT;
+	private boolean StopOnExtinction = STOPONEXTINCTION;
+	private boolean StopOnSaturation = STOPONSATURATION;
+	private int SteadyWindow = STEADYWINDOW;
+	private double SteadyTolerance = STEADYTOLERANCE;
+	private boolean BatchLifecycle = BATCHLIFECYCLE;
+	private String SeriesFile = SERIESFILE;
 
 	private Schedule schedule;
 
 	private RabbitsGrassSimulationSpace space;
 
-	private ArrayList<RabbitsGrassSimulationAgent> rabbitList;
+	private RandomSource random;
+	// A long never wraps around, so identifiers stay unique however many rabbits are born
+	private long lastRabbitID;
+	private long tickCount;
+	private int[] directions = new int[0];
+	private TiledStepper stepper;
+	private BatchLifecycle lifecycle;
+	private TickProfiler profiler;
+	private TerminationDetector detector;
+	private String stopReason;
 
 	private DisplaySurface displaySurf;
+	private DisplayRenderer renderer;
 
-	private OpenSequenceGraph amountOfEnergyInSpace;
+	private StreamingSeries energySeries;
+	private SeriesWindowGraph amountOfEnergyInSpace;
 	private OpenHistogram rabbitEnergyDistribution;
 
-	class energyInSpace implements DataSource, Sequence {
-
-		public Object execute() {
-			return new Double(getSValue());
-		}
-
-		public double getSValue() {
-			return (double) space.getTotalGrassEnergy();
-		}
-	}
-	
-	class rabbitsInSpace implements DataSource, Sequence {
-
-		public Object execute() {
-			return new Double(getSValue());
-		}
-
-		public double getSValue() {
-			return (double) space.getTotalRabbitsEnergy();
-		}
-	}
-
 	class rabbitEnergy implements BinDataSource {
 		public double getBinValue(Object o) {
 			RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent) o;
@@ -101,90 +127,384 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 	public void begin() {
 		buildModel();
 		buildSchedule();
-		buildDisplay();
 
-		displaySurf.display();
-		amountOfEnergyInSpace.display();
-		rabbitEnergyDistribution.display();
+		// In headless mode no display is built nor updated
+		if (!Headless) {
+			recordEnergy();
+			buildDisplay();
+
+			displaySurf.display();
+			amountOfEnergyInSpace.display();
+			rabbitEnergyDistribution.display();
+			if (renderer != null) {
+				renderer.start();
+			}
+		}
+	}
+
+	/**
+	 * Run the simulation without Repast controller nor displays. The model is
+	 * set up, built and stepped numTicks times as fast as possible, recording
+	 * the population and energy time series after every tick.
+	 * @param numTicks Number of ticks to simulate
+	 * @param series Writer of the time series (tick 0 is the initial state)
+	 * @throws IOException If the time series cannot be written
+	 */
+	public void runHeadless(int numTicks, TimeSeriesSink series) throws IOException {
+		buildHeadless();
+		record(series);
+		runTicks(numTicks, series);
+	}
+
+	/**
+	 * Set up and build the model without Repast controller nor displays,
+	 * ready to be stepped with runTicks
+	 */
+	public void buildHeadless() {
+		Headless = true;
+		setupModel();
+		buildModel();
+	}
+
+	/**
+	 * Step a headless model, recording the time series after every tick,
+	 * until numTicks ticks are simulated or a termination detector fires
+	 * (see getStopReason)
+	 * @param numTicks Number of ticks to simulate
+	 * @param series Writer of the time series
+	 * @return boolean False if the run stopped early
+	 * @throws IOException If the time series cannot be written
+	 */
+	public boolean runTicks(int numTicks, TimeSeriesSink series) throws IOException {
+		for (int i = 0; i < numTicks; i++) {
+			tick();
+			record(series);
+			if (checkTermination()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Run the termination detectors enabled by the parameters, if any
+	 * @return boolean True if the run has to stop, the reason is kept in stopReason
+	 */
+	private boolean checkTermination() {
+		if (detector != null && stopReason == null) {
+			stopReason = detector.check(space);
+		}
+		return stopReason != null;
+	}
+
+	/**
+	 * @return String Why the run stopped before its tick budget (one of the reasons
+	 * of TerminationDetector), or null if it did not
+	 */
+	public String getStopReason() {
+		return stopReason;
+	}
+
+	/**
+	 * @return long Number of ticks simulated since the model was built
+	 */
+	public long getTicksSimulated() {
+		return tickCount;
+	}
+
+	/**
+	 * Record the current state, e.g. tick 0 of a fresh model or the tick
+	 * of a restored checkpoint
+	 * @param series Writer of the time series
+	 * @throws IOException If the time series cannot be written
+	 */
+	public void record(TimeSeriesSink series) throws IOException {
+		series.record(tickCount, space.getNumRabbits(), space.getTotalGrassEnergy(), space.getTotalRabbitsEnergy());
+	}
+
+	/**
+	 * @return int Number of cells in the y axis: GridHeight, or GridSize if it is 0 (square grid)
+	 */
+	private int getHeight() {
+		return (GridHeight > 0) ? GridHeight : GridSize;
+	}
+
+	/**
+	 * @return RabbitsGrassSimulationSpace Space of the simulation, null before it is built
+	 */
+	public RabbitsGrassSimulationSpace getSpace() {
+		return space;
+	}
+
+	/**
+	 * Save the state of the simulation, so that it can be continued later
+	 * with restoreCheckpoint
+	 * @param fileName Path of the checkpoint
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	public void saveCheckpoint(String fileName) throws IOException {
+		SimulationCheckpoint.save(fileName, tickCount, lastRabbitID, random, space);
+	}
+
+	/**
+	 * Replace the model by the state saved in a checkpoint, in headless mode.
+	 * GridSize and GridHeight must be the ones of the saved simulation; the other parameters
+	 * apply from the next tick, so a checkpoint can be continued with a
+	 * different growth rate, regrowth mode or stepping mode.
+	 * @param fileName Path of the checkpoint
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	public void restoreCheckpoint(String fileName) throws IOException {
+		SimulationCheckpoint checkpoint = SimulationCheckpoint.load(fileName);
+		Headless = true;
+		setupModel();
+		random = checkpoint.getRandom();
+		space = newSpace();
+		checkpoint.readSpace(space);
+		tickCount = checkpoint.getTick();
+		lastRabbitID = checkpoint.getLastRabbitID();
+
+		if (GrassRegrowth == REGROWTH_WHEEL && !space.hasRegrowthSchedule()) {
+			space.scheduleRegrowth(GrassRegrowthDelay);
+		}
+		if (ParallelStep && TiledStepper.canTile(GridSize, getHeight())) {
+			stepper = new TiledStepper(space, TileSize, ForkJoinPool.commonPool());
+		}
+		if (BatchLifecycle) {
+			lifecycle = new BatchLifecycle(space, ParallelStep ? ForkJoinPool.commonPool() : null);
+		}
+		openProfiler();
+	}
+
+
+	/**
+	 * @return RabbitsGrassSimulationSpace Empty space of GridSize x GridHeight cells using random
+	 */
+	private RabbitsGrassSimulationSpace newSpace() {
+		if (MaxGrassEnergy > GrassGrid.MAX_ENERGY) {
+			throw new IllegalArgumentException("MaxGrassEnergy is limited to " + GrassGrid.MAX_ENERGY);
+		}
+		return new RabbitsGrassSimulationSpace(GridSize, getHeight(), random);
 	}
 
 	public void buildModel() {
-		System.out.println("Running BuildModel");
-		space = new RabbitsGrassSimulationSpace(GridSize);
+		if (!Headless) {
+			System.out.println("Running BuildModel");
+		}
+		openProfiler();
+		// A seed of 0 takes the one of Repast, so GUI runs still change every time
+		random = new RandomSource(Seed != 0 ? Seed : getRngSeed());
+		space = newSpace();
 		space.spreadGrass(NumInitGrass, MaxGrassEnergy);
+		if (GrassRegrowth == REGROWTH_WHEEL) {
+			space.scheduleRegrowth(GrassRegrowthDelay);
+		}
+		// Grids too small to be tiled are always stepped sequentially
+		if (ParallelStep && TiledStepper.canTile(GridSize, getHeight())) {
+			stepper = new TiledStepper(space, TileSize, ForkJoinPool.commonPool());
+		}
+		// Deaths and births in batch, in parallel along with the stepping
+		if (BatchLifecycle) {
+			lifecycle = new BatchLifecycle(space, ParallelStep ? ForkJoinPool.commonPool() : null);
+		}
 
 		for (int i = 0; i < NumInitRabbits; i++) {
 			addNewRabbit();
 		}
 
-		for (int i = 0; i < rabbitList.size(); i++) {
-			RabbitsGrassSimulationAgent cda = rabbitList.get(i);
-			cda.report();
+		if (!Headless) {
+			for (RabbitsGrassSimulationAgent cda : space.getRabbits().asList()) {
+				cda.report();
+			}
 		}
 	}
 
-	private void addNewRabbit() {
-		RabbitsGrassSimulationAgent rabbit = new RabbitsGrassSimulationAgent(MaxEnergy);
-		rabbitList.add(rabbit);
-		space.addRabbit(rabbit);
+	/**
+	 * Create a rabbit with a unique identifier and a random integer quantity
+	 * of energy in [1, MaxEnergy], and allocate it in the space
+	 * @return boolean False if the grid is full and the rabbit cannot be allocated
+	 */
+	private boolean addNewRabbit() {
+		if (space.isFull()) {
+			return false;
+		}
+		lastRabbitID++;
+		return space.addRabbit(lastRabbitID, random.nextInt(MaxEnergy) + 1);
 	}
 
 	private int updateSpace() {
 		int count = 0;
-		for (int i = (rabbitList.size() - 1); i >= 0; i--) {
-			RabbitsGrassSimulationAgent cda = rabbitList.get(i);
-			if (cda.getEnergy() >= BirthThreshold) {
-				cda.setEnergy(cda.getEnergy() / 3);
+		RabbitPopulation rabbits = space.getRabbits();
+		// Going backwards, the rabbit that takes the slot of a dead one is already visited
+		for (int i = (rabbits.size() - 1); i >= 0; i--) {
+			int energy = rabbits.getEnergy(i);
+			if (energy >= BirthThreshold) {
+				rabbits.setEnergy(i, energy / 3);
 				count++;
-			} else if (cda.getEnergy() < 1) {
-				space.removeRabbitAt(cda.getX(), cda.getY());
-				rabbitList.remove(i);
+			} else if (energy < 1) {
+				space.removeRabbit(i);
 			}
 		}
-
-		space.spreadGrass(GrassGrowthRate, MaxGrassEnergy);
 		return count;
 	}
 
-	private int countLivingAgents() {
-		int livingAgents = 0;
-		for (int i = 0; i < rabbitList.size(); i++) {
-			RabbitsGrassSimulationAgent cda = rabbitList.get(i);
-			if (cda.getEnergy() > 0)
-				livingAgents++;
+	private void growGrass() {
+		switch (GrassRegrowth) {
+		case REGROWTH_BULK:
+			space.spreadGrassBulk(GrassGrowthRate, MaxGrassEnergy);
+			break;
+		case REGROWTH_WHEEL:
+			// GrassGrowthRate is not used, every eaten cell grows back after GrassRegrowthDelay ticks
+			space.regrowGrass(MaxGrassEnergy);
+			break;
+		default:
+			space.spreadGrass(GrassGrowthRate, MaxGrassEnergy);
+			break;
 		}
+	}
+
+	private int countLivingAgents() {
+		// Rabbits without energy are removed from the space in updateSpace
+		int livingAgents = space.getNumRabbits();
 		System.out.println("Number of living rabbits is: " + livingAgents);
 
 		return livingAgents;
 	}
 
+	/**
+	 * Perform one step of the simulation: every rabbit moves (in random order),
+	 * dead rabbits are removed, new rabbits are born and grass is spread
+	 */
+	public void tick() {
+		tickCount++;
+		long start = (profiler != null) ? System.nanoTime() : 0;
+		RabbitPopulation rabbits = space.getRabbits();
+		int[] order = rabbits.shuffledOrder(random);
+
+		// Draw the moving direction of every rabbit at once
+		int numRabbits = rabbits.size();
+		if (directions.length < numRabbits) {
+			directions = new int[Math.max(numRabbits, 2 * directions.length)];
+		}
+		random.nextInts(directions, numRabbits, 4);
+
+		if (stepper != null) {
+			stepper.step(order, directions, numRabbits);
+		} else {
+			for (int i = 0; i < numRabbits; i++) {
+				space.stepRabbit(order[i], directions[i]);
+			}
+		}
+		if (profiler != null) {
+			start = profiler.stop(TickProfiler.STEP, start);
+		}
+
+		int newRabbits = (lifecycle != null) ? lifecycle.compact(BirthThreshold) : updateSpace();
+		long updateSpaceTime = 0;
+		if (profiler != null) {
+			long now = System.nanoTime();
+			updateSpaceTime = now - start;
+			start = now;
+		}
+
+		growGrass();
+		if (profiler != null) {
+			start = profiler.stop(TickProfiler.GRASS, start);
+		}
+
+		// Create one new rabbit for each existing one with high energy
+		if (lifecycle != null) {
+			int placed = lifecycle.placeNewborns(newRabbits, MaxEnergy, lastRabbitID + 1);
+			lastRabbitID += placed;
+			if (placed < newRabbits && !Headless) {
+				System.out.println("Grid is full of Rabbits: Unable to allocate " + (newRabbits - placed) + " more");
+			}
+		} else {
+			for (int i = 0; i < newRabbits; i++) {
+				if (!addNewRabbit()) {
+					if (!Headless) {
+						System.out.println("Grid is full of Rabbits: Unable to allocate " + (newRabbits - i) + " more");
+					}
+					break;
+				}
+			}
+		}
+		if (profiler != null) {
+			// Deaths and births are both part of updating the space
+			profiler.record(TickProfiler.UPDATE_SPACE, updateSpaceTime + System.nanoTime() - start);
+			if (ProfileEvery > 0 && tickCount % ProfileEvery == 0) {
+				profiler.export(tickCount);
+			}
+		}
+	}
+
+	/**
+	 * Start measuring the phases of every tick if ProfileFile is set
+	 */
+	private void openProfiler() {
+		if (!ProfileFile.isEmpty()) {
+			try {
+				profiler = new TickProfiler(ProfileFile);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	/**
+	 * Append the current tick to the series shown by the energy graph
+	 */
+	private void recordEnergy() {
+		try {
+			record(energySeries);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Export the last statistics of the profiler, if any, and close its file
+	 */
+	public void closeProfiler() {
+		if (profiler != null) {
+			profiler.export(tickCount);
+			profiler.close();
+			profiler = null;
+		}
+	}
+
 	public void buildSchedule() {
 		System.out.println("Running BuildSchedule");
 
 		class RabbitGrassStep extends BasicAction {
 			public void execute() {
-				SimUtilities.shuffle(rabbitList);
-				for (int i = 0; i < rabbitList.size(); i++) {
-					RabbitsGrassSimulationAgent cda = rabbitList.get(i);
-					cda.step();
+				tick();
+				if (checkTermination()) {
+					System.out.println("Stopping at tick " + tickCount + ": " + stopReason);
+					stop();
 				}
-
-				// Create one new rabbit for each existing one with high energy
-				int newRabbits = updateSpace();
-				for (int i = 0; i < newRabbits; i++) {
-					if (rabbitList.size() < GridSize * GridSize) {
-						addNewRabbit();
+				if (!Headless) {
+					recordEnergy();
+					long start = (profiler != null) ? System.nanoTime() : 0;
+					if (renderer != null) {
+						renderer.offer(space);
 					} else {
-						System.out.println("Grid is full of Rabbits: Unable to allocate more");
+						displaySurf.updateDisplay();
+					}
+					if (profiler != null) {
+						profiler.stop(TickProfiler.DISPLAY, start);
 					}
 				}
-
-				displaySurf.updateDisplay();
 			}
 		}
 
 		schedule.scheduleActionBeginning(0, new RabbitGrassStep());
 
+		if (Headless) {
+			// Plots are not built in headless mode
+			return;
+		}
+
 		class RabbitGrassCountLiving extends BasicAction {
 			public void execute() {
 				countLivingAgents();
@@ -195,7 +515,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
 		class RabbitsGrassUpdateEnergyInSpace extends BasicAction {
 			public void execute() {
+				long start = (profiler != null) ? System.nanoTime() : 0;
 				amountOfEnergyInSpace.step();
+				if (profiler != null) {
+					profiler.stop(TickProfiler.ENERGY_GRAPH, start);
+				}
 			}
 		}
 
@@ -203,7 +527,11 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
 		class RabbitsGrassUpdateEnergy extends BasicAction {
 			public void execute() {
+				long start = (profiler != null) ? System.nanoTime() : 0;
 				rabbitEnergyDistribution.step();
+				if (profiler != null) {
+					profiler.stop(TickProfiler.HISTOGRAM, start);
+				}
 			}
 		}
 
@@ -221,21 +549,26 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
 		map.mapColor(0, Color.black);
 
-		Value2DDisplay displayEnergy = new Value2DDisplay(space.getCurrentGrassSpace(), map);
-
-		Object2DDisplay displayRabbits = new Object2DDisplay(space.getCurrentRabbitSpace());
-		displayRabbits.setObjectList(rabbitList);
+		Value2DDisplay displayEnergy;
+		Object2DDisplay displayRabbits;
+		if (RenderRate > 0) {
+			// The displays show the copy of the space painted by the render thread
+			renderer = new DisplayRenderer(space, RenderRate, displaySurf);
+			displayEnergy = new Value2DDisplay(renderer.getGrass(), map);
+			displayRabbits = new Object2DDisplay(renderer.getRabbitGrid());
+			displayRabbits.setObjectList(renderer.getRabbits().asList());
+		} else {
+			displayEnergy = new Value2DDisplay(space.getCurrentGrassSpace(), map);
+			displayRabbits = new Object2DDisplay(space.getCurrentRabbitSpace());
+			displayRabbits.setObjectList(space.getRabbits().asList());
+		}
 
 		// Main display of grid with grass and rabbits
 		displaySurf.addDisplayable(displayEnergy, "Grass");
 		displaySurf.addDisplayable(displayRabbits, "Rabbits");
 
-		// Plot grass and rabbit's energy
-		amountOfEnergyInSpace.addSequence("Grass' energy", new energyInSpace());
-		amountOfEnergyInSpace.addSequence("Rabbits' energy", new rabbitsInSpace());
-		
 		// Histogram of energy distribution among rabbits
-		rabbitEnergyDistribution.createHistogramItem("Rabbit Energy", rabbitList, new rabbitEnergy());
+		rabbitEnergyDistribution.createHistogramItem("Rabbit Energy", space.getRabbits().asList(), new rabbitEnergy());
 
 	}
 
@@ -245,10 +578,40 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		// Do "not" modify the parameters names provided in the skeleton code, you can
 		// add more if you want
 		String[] params = { "GridSize", "NumInitRabbits", "NumInitGrass", "GrassGrowthRate", "BirthThreshold",
-				"MaxEnergy", "MaxGrassEnergy" };
+				"MaxEnergy", "MaxGrassEnergy", "Headless", "Seed", "ParallelStep", "TileSize", "GrassRegrowth",
+				"GrassRegrowthDelay", "ProfileFile", "ProfileEvery",
+				"RenderRate", "SeriesWindow", "SeriesFile", "GridHeight", "StopOnExtinction", "StopOnSaturation",
+				"SteadyWindow", "SteadyTolerance", "BatchLifecycle" };
 		return params;
 	}
 
+	/**
+	 * Set one of the parameters of getInitParam from its textual value, using
+	 * the same getter/setter pair that the Repast UI uses
+	 * @param name Name of the parameter, e.g. "GridSize"
+	 * @param value Value of the parameter, e.g. "50"
+	 */
+	public void setParameter(String name, String value) {
+		try {
+			Method getter = getClass().getMethod("get" + name);
+			Class<?> type = getter.getReturnType();
+			Method setter = getClass().getMethod("set" + name, type);
+			if (type == int.class) {
+				setter.invoke(this, Integer.parseInt(value));
+			} else if (type == long.class) {
+				setter.invoke(this, Long.parseLong(value));
+			} else if (type == double.class) {
+				setter.invoke(this, Double.parseDouble(value));
+			} else if (type == boolean.class) {
+				setter.invoke(this, Boolean.parseBoolean(value));
+			} else {
+				setter.invoke(this, value);
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Unknown parameter " + name, e);
+		}
+	}
+
 	public String getName() {
 		return "Rabbits Grass Model";
 	}
@@ -258,11 +621,13 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 	}
 
 	public void setup() {
-		space = null;
-		rabbitList = new ArrayList<RabbitsGrassSimulationAgent>();
-		schedule = new Schedule(1);
+		setupModel();
 
 		// Tear down Displays
+		if (renderer != null) {
+			renderer.stop();
+		}
+		renderer = null;
 		if (displaySurf != null) {
 			displaySurf.dispose();
 		}
@@ -273,14 +638,35 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 		}
 		amountOfEnergyInSpace = null;
 
+		if (energySeries != null) {
+			try {
+				energySeries.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		energySeries = null;
+
 		if (rabbitEnergyDistribution != null) {
 			rabbitEnergyDistribution.dispose();
 		}
 		rabbitEnergyDistribution = null;
 
+		if (Headless) {
+			return;
+		}
+
 		// Create Displays
 		displaySurf = new DisplaySurface(this, "Rabbits Grass model W1");
-		amountOfEnergyInSpace = new OpenSequenceGraph("Amount of Energy In Space", this);
+		// Only the last SeriesWindow ticks are kept in memory, the full history goes to SeriesFile if set
+		try {
+			energySeries = new StreamingSeries(SeriesWindow, SeriesFile.isEmpty() ? null : SeriesFile);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+		amountOfEnergyInSpace = new SeriesWindowGraph("Amount of Energy In Space", this, energySeries,
+				new int[] { StreamingSeries.GRASS_ENERGY, StreamingSeries.RABBITS_ENERGY },
+				new String[] { "Grass' energy", "Rabbits' energy" }, new Color[] { Color.green, Color.red });
 		// OpenHistogram(title, # of bins, lower bound)
 		rabbitEnergyDistribution = new OpenHistogram("Rabbit Energy", 8, -1);
 
@@ -290,6 +676,27 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 
 	}
 
+	/**
+	 * Reset the state of the simulation (space, rabbits and schedule)
+	 * without touching the displays
+	 */
+	private void setupModel() {
+		space = null;
+		schedule = new Schedule(1);
+		random = null;
+		lastRabbitID = 0;
+		tickCount = 0;
+		stepper = null;
+		lifecycle = null;
+		closeProfiler();
+		stopReason = null;
+		if (StopOnExtinction || StopOnSaturation || SteadyWindow > 1) {
+			detector = new TerminationDetector(StopOnExtinction, StopOnSaturation, SteadyWindow, SteadyTolerance);
+		} else {
+			detector = null;
+		}
+	}
+
 	public int getGridSize() {
 		return GridSize;
 	}
@@ -349,4 +756,140 @@ public class RabbitsGrassSimulationModel extends SimModelImpl {
 	public void setMaxGrassEnergy(int maxGrassEnergy) {
 		MaxGrassEnergy = maxGrassEnergy;
 	}
+
+	public boolean getHeadless() {
+		return Headless;
+	}
+
+	public void setHeadless(boolean headless) {
+		Headless = headless;
+	}
+
+	public long getSeed() {
+		return Seed;
+	}
+
+	public void setSeed(long seed) {
+		Seed = seed;
+	}
+
+	public boolean getParallelStep() {
+		return ParallelStep;
+	}
+
+	public void setParallelStep(boolean parallelStep) {
+		ParallelStep = parallelStep;
+	}
+
+	public int getTileSize() {
+		return TileSize;
+	}
+
+	public void setTileSize(int tileSize) {
+		TileSize = tileSize;
+	}
+
+	public int getGrassRegrowth() {
+		return GrassRegrowth;
+	}
+
+	public void setGrassRegrowth(int grassRegrowth) {
+		GrassRegrowth = grassRegrowth;
+	}
+
+	public int getGrassRegrowthDelay() {
+		return GrassRegrowthDelay;
+	}
+
+	public void setGrassRegrowthDelay(int grassRegrowthDelay) {
+		GrassRegrowthDelay = grassRegrowthDelay;
+	}
+
+	public String getProfileFile() {
+		return ProfileFile;
+	}
+
+	public void setProfileFile(String profileFile) {
+		ProfileFile = profileFile;
+	}
+
+	public int getProfileEvery() {
+		return ProfileEvery;
+	}
+
+	public void setProfileEvery(int profileEvery) {
+		ProfileEvery = profileEvery;
+	}
+
+	public int getRenderRate() {
+		return RenderRate;
+	}
+
+	public void setRenderRate(int renderRate) {
+		RenderRate = renderRate;
+	}
+
+	public int getSeriesWindow() {
+		return SeriesWindow;
+	}
+
+	public void setSeriesWindow(int seriesWindow) {
+		SeriesWindow = seriesWindow;
+	}
+
+	public String getSeriesFile() {
+		return SeriesFile;
+	}
+
+	public void setSeriesFile(String seriesFile) {
+		SeriesFile = seriesFile;
+	}
+
+	public int getGridHeight() {
+		return GridHeight;
+	}
+
+	public void setGridHeight(int gridHeight) {
+		GridHeight = gridHeight;
+	}
+
+	public boolean getStopOnExtinction() {
+		return StopOnExtinction;
+	}
+
+	public void setStopOnExtinction(boolean stopOnExtinction) {
+		StopOnExtinction = stopOnExtinction;
+	}
+
+	public boolean getStopOnSaturation() {
+		return StopOnSaturation;
+	}
+
+	public void setStopOnSaturation(boolean stopOnSaturation) {
+		StopOnSaturation = stopOnSaturation;
+	}
+
+	public int getSteadyWindow() {
+		return SteadyWindow;
+	}
+
+	public void setSteadyWindow(int steadyWindow) {
+		SteadyWindow = steadyWindow;
+	}
+
+	public double getSteadyTolerance() {
+		return SteadyTolerance;
+	}
+
+	public void setSteadyTolerance(double steadyTolerance) {
+		SteadyTolerance = steadyTolerance;
+	}
+
+	public boolean getBatchLifecycle() {
+		return BatchLifecycle;
+	}
+
+	public void setBatchLifecycle(boolean batchLifecycle) {
+		BatchLifecycle = batchLifecycle;
+	}
 }
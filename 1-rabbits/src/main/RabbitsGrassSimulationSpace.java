@@ -1,29 +1,58 @@
 package main;
+
+import java.io.IOException;
+
 /**
  * Class that implements the simulation space of the rabbits grass simulation.
+ * The grid is a rectangular torus whose grass and rabbit cells are stored
+ * outside of the heap (see GrassGrid and RabbitGrid), so it can have billions
+ * of cells. The total energies are kept as longs, since they grow with the
+ * number of cells and overflow an int on large grids.
+ * Up to FREE_CELL_INDEX_LIMIT cells, the free cells are also indexed so that
+ * rabbits are placed in O(1) however full the grid is; larger grids, which
+ * are never nearly full in practice, place rabbits by drawing random cells
+ * until a free one is found and take 6 bytes per cell.
  * @author Oriol Barbany & Natalie Bolon
  */
 
-// import uchicago.src.sim.space.Discrete2DSpace;
-import uchicago.src.sim.space.Object2DGrid;
-
 public class RabbitsGrassSimulationSpace {
-	private Object2DGrid grassSpace;
-	private Object2DGrid rabbitSpace;
+	private static final int SPREAD_BLOCK = 64;
+	private static final long FREE_CELL_INDEX_LIMIT = 1L << 27;
+
+	private GrassGrid grassSpace;
+	private RabbitGrid rabbitSpace;
+	private RabbitPopulation rabbits;
+	private FreeCellSet freeCells;
+	private final long numCells;
+	private long totalGrassEnergy;
+	private RandomSource random;
+	private GrassTimingWheel regrowth;
+	private int[] cellBuffer = new int[0];
+	private final int[] blockUnits = new int[SPREAD_BLOCK];
 
 	/**
 	 * Constructor of the class RabbitsGrassSimulationSpace
 	 * @param GridSize Length of any axis of the square grid
+	 * @param random Random number generator of the simulation
 	 */
-	public RabbitsGrassSimulationSpace(int GridSize) {
-		grassSpace = new Object2DGrid(GridSize, GridSize);
-		rabbitSpace = new Object2DGrid(GridSize, GridSize);
-		
+	public RabbitsGrassSimulationSpace(int GridSize, RandomSource random) {
+		this(GridSize, GridSize, random);
+	}
 
-		for (int i = 0; i < GridSize; i++) {
-			for (int j = 0; j < GridSize; j++) {
-				grassSpace.putObjectAt(i, j, new Integer(0));
-			}
+	/**
+	 * Constructor of the class RabbitsGrassSimulationSpace for rectangular grids
+	 * @param sizeX Number of cells in the x axis
+	 * @param sizeY Number of cells in the y axis
+	 * @param random Random number generator of the simulation
+	 */
+	public RabbitsGrassSimulationSpace(int sizeX, int sizeY, RandomSource random) {
+		this.random = random;
+		numCells = (long) sizeX * sizeY;
+		grassSpace = new GrassGrid(sizeX, sizeY);
+		rabbits = new RabbitPopulation();
+		rabbitSpace = new RabbitGrid(sizeX, sizeY, rabbits);
+		if (numCells <= FREE_CELL_INDEX_LIMIT) {
+			freeCells = new FreeCellSet((int) numCells);
 		}
 	}
 
@@ -40,21 +69,115 @@ public class RabbitsGrassSimulationSpace {
 		while (i < numGrass) {
 
 			// Choose coordinates
-			int x = (int) (Math.random() * (grassSpace.getSizeX()));
-			int y = (int) (Math.random() * (grassSpace.getSizeY()));
+			int x = random.nextInt(grassSpace.getSizeX());
+			int y = random.nextInt(grassSpace.getSizeY());
 
 			// Get value
 			int currentValue = getGrassAt(x, y);
 
-			int nextVal = new Integer((int)(1 + Math.random() * (MaxGrassEnergy)));
+			int nextVal = 1 + random.nextInt(MaxGrassEnergy);
 			// Assign new value - between 1 and maximum grass energy level 
-			grassSpace.putObjectAt(x, y, Math.min(currentValue + nextVal, MaxGrassEnergy) );
+			int newValue = Math.min(currentValue + nextVal, MaxGrassEnergy);
+			grassSpace.set(x, y, newValue);
+			totalGrassEnergy += newValue - currentValue;
 			
 			i++;
 		
 		}
 	}
 
+	/**
+	 * Same as spreadGrass, but the number of grass units falling in every
+	 * cell (a multinomial distribution) is drawn in bulk. When there are few
+	 * units compared to cells, all the cells are drawn at once into a buffer.
+	 * Otherwise the grid is visited once, in blocks of consecutive cells: the
+	 * units of every block are drawn from a binomial distribution given the
+	 * units left for the remaining cells, and spread uniformly inside the
+	 * block, so the random accesses stay within a few cache lines.
+	 * Cells stop drawing energies as soon as they reach MaxGrassEnergy.
+	 * @param numGrass This is the number of grass units that will be allocated
+	 * @param MaxGrassEnergy This is the maximum energy of each unit of grass
+	 */
+	public void spreadGrassBulk(int numGrass, int MaxGrassEnergy) {
+		int sizeX = grassSpace.getSizeX();
+
+		if (numCells > Integer.MAX_VALUE) {
+			// Cell indices do not fit in an int, and there are always few units compared to cells
+			for (int i = 0; i < numGrass; i++) {
+				growGrass(random.nextInt(sizeX), random.nextInt(grassSpace.getSizeY()), 1, MaxGrassEnergy);
+			}
+		} else if (numGrass < numCells / 2) {
+			int numCells = (int) this.numCells;
+			if (cellBuffer.length < numGrass) {
+				cellBuffer = new int[Math.max(numGrass, 2 * cellBuffer.length)];
+			}
+			random.nextInts(cellBuffer, numGrass, numCells);
+			for (int i = 0; i < numGrass; i++) {
+				growGrass(cellBuffer[i] % sizeX, cellBuffer[i] / sizeX, 1, MaxGrassEnergy);
+			}
+		} else {
+			int numCells = (int) this.numCells;
+			int remaining = numGrass;
+			for (int start = 0; start < numCells && remaining > 0; start += SPREAD_BLOCK) {
+				int cells = Math.min(SPREAD_BLOCK, numCells - start);
+				int units = random.nextBinomial(remaining, (double) cells / (numCells - start));
+				remaining -= units;
+				for (int i = 0; i < units; i++) {
+					blockUnits[random.nextInt(cells)]++;
+				}
+				for (int i = 0; i < cells; i++) {
+					if (blockUnits[i] > 0) {
+						int cell = start + i;
+						growGrass(cell % sizeX, cell / sizeX, blockUnits[i], MaxGrassEnergy);
+						blockUnits[i] = 0;
+					}
+				}
+			}
+		}
+	}
+
+	private void growGrass(int x, int y, int units, int MaxGrassEnergy) {
+		int currentValue = grassSpace.get(x, y);
+		int newValue = currentValue;
+		for (int i = 0; i < units && newValue < MaxGrassEnergy; i++) {
+			newValue += 1 + random.nextInt(MaxGrassEnergy);
+		}
+		newValue = Math.min(newValue, MaxGrassEnergy);
+		grassSpace.set(x, y, newValue);
+		totalGrassEnergy += newValue - currentValue;
+	}
+
+	/**
+	 * Switch to deterministic regrowth: from now on, every cell that is eaten
+	 * grows back to the maximum energy exactly delay ticks later (see
+	 * regrowGrass). The cells without grass are scheduled to grow in a random
+	 * tick within the next delay ticks, so they do not all grow at once.
+	 * @param delay Number of ticks between a cell being eaten and its regrowth
+	 */
+	public void scheduleRegrowth(int delay) {
+		if (numCells > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Deterministic regrowth is limited to grids of less than 2^31 cells");
+		}
+		int sizeX = grassSpace.getSizeX();
+		regrowth = new GrassTimingWheel(sizeX * grassSpace.getSizeY(), delay);
+		for (int y = 0; y < grassSpace.getSizeY(); y++) {
+			for (int x = 0; x < sizeX; x++) {
+				if (grassSpace.get(x, y) == 0) {
+					regrowth.schedule(y * sizeX + x, 1 + random.nextInt(delay));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Advance the regrowth schedule one tick, growing the cells that are due.
+	 * Only valid after scheduleRegrowth.
+	 * @param MaxGrassEnergy This is the energy of the grown cells
+	 */
+	public void regrowGrass(int MaxGrassEnergy) {
+		totalGrassEnergy += regrowth.advance(grassSpace, MaxGrassEnergy);
+	}
+
 	/**
 	 * Return energy of grass in the current space
 	 * (0 if there is no grass there)
@@ -63,35 +186,20 @@ public class RabbitsGrassSimulationSpace {
 	 * @return int Amount of energy in (x, y)
 	 */
 	public int getGrassAt(int x, int y) {
-		int i;
-		if (grassSpace.getObjectAt(x, y) != null) {
-			i = ((Integer) grassSpace.getObjectAt(x, y)).intValue();
-		} else {
-			i = 0;
-		}
-		return i;
+		return grassSpace.get(x, y);
 	}
 	
 	/**
-	 * Return rabbits in the current space
-	 * (0 if there is no rabbit, 1 if there is one)
+	 * Return energy of the rabbit in the current space
+	 * (0 if there is no rabbit)
 	 * @param x This is the x coordinate
 	 * @param y This is the y coordinate
-	 * @return int Amount of rabbits in (x, y)
+	 * @return int Energy of the rabbit in (x, y)
 	 */
 	public int getRabbitEnergyAt(int x, int y) {
-		int i;
-		if (rabbitSpace.getObjectAt(x, y) != null) {
-			RabbitsGrassSimulationAgent agent = (RabbitsGrassSimulationAgent) rabbitSpace.getObjectAt(x, y);
-			i = agent.getEnergy();
-		}else {
-			i = 0;
-		}
-			
-		return i;
+		int slot = rabbitSpace.get(x, y);
+		return (slot == RabbitGrid.EMPTY) ? 0 : rabbits.getEnergy(slot);
 	}
-		
-	
 
 	/**
 	 * Check if there is a rabbit in the specified cell
@@ -100,39 +208,132 @@ public class RabbitsGrassSimulationSpace {
 	 * @return boolean Return true if cell is occupied
 	 */
 	public boolean isCellOccupied(int x, int y) {
-		boolean value = false;
-		if (rabbitSpace.getObjectAt(x, y) != null)
-			value = true;
-		return value;
-	}
-
-	/**
-	 * Add a new rabbit located in the specified cell. The initial
-	 * location is random and we try a maximum of 10 times the number
-	 * of cells in the space. This is an educated guess that makes
-	 * the probability of no allocation when there is actually space
-	 * very low and avoids an infinite loop when there is no space.
-	 * @param RabbitsGrassSimulationAgent Instance of the agent to be allocated
-	 * @return True if location was possible
-	 */
-	public boolean addRabbit(RabbitsGrassSimulationAgent agent) {
-		boolean value = false;
-		int count = 0;
-		int countLimit = 10 * rabbitSpace.getSizeX() * rabbitSpace.getSizeY();
-
-		while ((value == false) && (count < countLimit)) {
-			int x = (int) (Math.random() * (rabbitSpace.getSizeX()));
-			int y = (int) (Math.random() * (rabbitSpace.getSizeY()));
-			if (isCellOccupied(x, y) == false) {
-				rabbitSpace.putObjectAt(x, y, agent);
-				agent.setXY(x, y);
-				agent.setRabbitSpace(this);
-				value = true;
+		return rabbitSpace.get(x, y) != RabbitGrid.EMPTY;
+	}
+
+	/**
+	 * Check if every cell of the space is occupied by a rabbit
+	 * @return boolean Return true if there is no room for more rabbits
+	 */
+	public boolean isFull() {
+		return (freeCells != null) ? freeCells.isEmpty() : rabbits.size() == numCells;
+	}
+
+	/**
+	 * Add a new rabbit located in a random cell, drawn uniformly
+	 * among the free ones
+	 * @param ID Unique identifier of the rabbit
+	 * @param energy Initial energy of the rabbit
+	 * @return True if location was possible (the grid was not full)
+	 */
+	public boolean addRabbit(long ID, int energy) {
+		if (isFull()) {
+			return false;
+		}
+		int x;
+		int y;
+		if (freeCells != null) {
+			int cell = freeCells.sample(random);
+			x = cell % rabbitSpace.getSizeX();
+			y = cell / rabbitSpace.getSizeX();
+			freeCells.remove(cell);
+		} else {
+			do {
+				x = random.nextInt(rabbitSpace.getSizeX());
+				y = random.nextInt(rabbitSpace.getSizeY());
+			} while (rabbitSpace.get(x, y) != RabbitGrid.EMPTY);
+		}
+		rabbitSpace.set(x, y, rabbits.add(ID, x, y, energy));
+		return true;
+	}
+
+	/**
+	 * Add many rabbits located in distinct random cells, drawn uniformly
+	 * among the free ones all at once
+	 * @param firstID Unique identifier of the first rabbit, the next ones get consecutive identifiers
+	 * @param count Number of rabbits, at most getNumFreeCells()
+	 * @param energies Initial energy of every rabbit
+	 */
+	public void addRabbits(long firstID, int count, int[] energies) {
+		int sizeX = rabbitSpace.getSizeX();
+		if (freeCells != null) {
+			if (cellBuffer.length < count) {
+				cellBuffer = new int[Math.max(count, 2 * cellBuffer.length)];
 			}
-			count++;
+			freeCells.removeRandom(random, count, cellBuffer);
+			for (int i = 0; i < count; i++) {
+				int x = cellBuffer[i] % sizeX;
+				int y = cellBuffer[i] / sizeX;
+				rabbitSpace.set(x, y, rabbits.add(firstID + i, x, y, energies[i]));
+			}
+		} else {
+			for (int i = 0; i < count; i++) {
+				int x;
+				int y;
+				do {
+					x = random.nextInt(sizeX);
+					y = random.nextInt(rabbitSpace.getSizeY());
+				} while (rabbitSpace.get(x, y) != RabbitGrid.EMPTY);
+				rabbitSpace.set(x, y, rabbits.add(firstID + i, x, y, energies[i]));
+			}
+		}
+	}
+
+	/**
+	 * @return long Number of cells without rabbit
+	 */
+	public long getNumFreeCells() {
+		return (freeCells != null) ? freeCells.size() : numCells - rabbits.size();
+	}
+
+	/**
+	 * Take the rabbit in slot off the grid, without touching the population
+	 * nor the free cell index. Rabbits of different slots can be taken off
+	 * concurrently from different threads.
+	 * @param slot Slot of the rabbit in the population
+	 */
+	void vacateCell(int slot) {
+		rabbitSpace.set(rabbits.getX(slot), rabbits.getY(slot), RabbitGrid.EMPTY);
+	}
+
+	/**
+	 * Add the cell of the rabbit in slot, already taken off the grid with
+	 * vacateCell, to the free cell index
+	 * @param slot Slot of the rabbit in the population
+	 */
+	void releaseCell(int slot) {
+		if (freeCells != null) {
+			freeCells.add(rabbits.getY(slot) * rabbitSpace.getSizeX() + rabbits.getX(slot));
 		}
+	}
+
+	/**
+	 * Move the rabbit of one slot of the population into another one, whose
+	 * rabbit must be off the grid, and point its cell to the new slot.
+	 * Distinct pairs of slots can be moved concurrently from different threads.
+	 * @param from Slot of the rabbit that is moved
+	 * @param to Slot where the rabbit is moved
+	 */
+	void moveSlot(int from, int to) {
+		rabbits.moveSlot(from, to);
+		rabbitSpace.set(rabbits.getX(to), rabbits.getY(to), to);
+	}
 
-		return value;
+	/**
+	 * Kill the rabbit in the specified slot of the population. The last
+	 * rabbit of the population takes its slot, so the grid is updated.
+	 * @param slot Slot of the rabbit in the population
+	 */
+	public void removeRabbit(int slot) {
+		int x = rabbits.getX(slot);
+		int y = rabbits.getY(slot);
+		rabbitSpace.set(x, y, RabbitGrid.EMPTY);
+		if (freeCells != null) {
+			freeCells.add(y * rabbitSpace.getSizeX() + x);
+		}
+		if (rabbits.remove(slot)) {
+			rabbitSpace.set(rabbits.getX(slot), rabbits.getY(slot), slot);
+		}
 	}
 
 	/**
@@ -141,7 +342,99 @@ public class RabbitsGrassSimulationSpace {
 	 * @param y This is the y coordinate
 	 */
 	public void removeRabbitAt(int x, int y) {
-		rabbitSpace.putObjectAt(x, y, null);
+		int slot = rabbitSpace.get(x, y);
+		if (slot != RabbitGrid.EMPTY) {
+			removeRabbit(slot);
+		}
+	}
+
+	/**
+	 * Perform next movement of a rabbit considering the torus structure of
+	 * the grid. Eat grass at new move if this was performed.
+	 * Otherwise check if grass has grown at current point.
+	 * Note each step, rabbit loses energy even if it doesn't move
+	 * @param slot Slot of the rabbit in the population
+	 * @param direction Direction of the movement, drawn uniformly in [0, 4):
+	 * 0 for East, 1 for West, 2 for South and 3 for North
+	 */
+	public void stepRabbit(int slot, int direction) {
+		int eaten = moveAndEat(slot, direction);
+		if (regrowth != null && eaten > 0) {
+			regrowth.eaten(cellOf(slot));
+		}
+		totalGrassEnergy -= eaten;
+		rabbits.addTotalEnergy(eaten - 1);
+	}
+
+	/**
+	 * Same as stepRabbit but without updating the total energies of grass
+	 * and rabbits, which must be fixed afterwards with addToTotals, nor
+	 * scheduling the regrowth of the eaten cell, which must be done
+	 * afterwards with scheduleEaten. It only touches the rabbit in slot and
+	 * the cell it stands on and its four neighbours, so rabbits whose
+	 * neighbourhoods are disjoint can be stepped concurrently from different threads.
+	 * @param slot Slot of the rabbit in the population
+	 * @param direction Direction of the movement, as in stepRabbit
+	 * @return int Energy of the grass eaten by the rabbit
+	 */
+	int moveAndEat(int slot, int direction) {
+		int x = rabbits.getX(slot);
+		int y = rabbits.getY(slot);
+		int newX = x;
+		int newY = y;
+
+		switch (direction) {
+		case 0:
+			newX = rabbitSpace.wrapX(x + 1);
+			break;
+		case 1:
+			newX = rabbitSpace.wrapX(x - 1);
+			break;
+		case 2:
+			newY = rabbitSpace.wrapY(y + 1);
+			break;
+		default:
+			newY = rabbitSpace.wrapY(y - 1);
+			break;
+		}
+
+		if (moveRabbitAt(x, y, newX, newY)) {
+			x = newX;
+			y = newY;
+		}
+		int eaten = grassSpace.get(x, y);
+		grassSpace.set(x, y, 0);
+		rabbits.addEnergyUntracked(slot, eaten - 1);
+		return eaten;
+	}
+
+	/**
+	 * @param slot Slot of a rabbit in the population
+	 * @return int Index of the cell where the rabbit stands, as used by the regrowth schedule
+	 */
+	int cellOf(int slot) {
+		return rabbits.getY(slot) * grassSpace.getSizeX() + rabbits.getX(slot);
+	}
+
+	/**
+	 * Schedule the regrowth of a cell eaten with moveAndEat, if grass grows
+	 * with the deterministic schedule. Not thread safe.
+	 * @param cell Index of the cell, as returned by cellOf
+	 */
+	void scheduleEaten(int cell) {
+		if (regrowth != null) {
+			regrowth.eaten(cell);
+		}
+	}
+
+	/**
+	 * Fix the total energies after stepping rabbits with moveAndEat
+	 * @param grassEaten Total energy of the grass eaten by the rabbits
+	 * @param numStepped Number of rabbits stepped
+	 */
+	void addToTotals(long grassEaten, int numStepped) {
+		totalGrassEnergy -= grassEaten;
+		rabbits.addTotalEnergy(grassEaten - numStepped);
 	}
 
 	/**
@@ -155,7 +448,11 @@ public class RabbitsGrassSimulationSpace {
 	 */
 	public int eatGrassAt(int x, int y) {
 		int energy = getGrassAt(x, y);
-		grassSpace.putObjectAt(x, y, new Integer(0));
+		grassSpace.set(x, y, 0);
+		totalGrassEnergy -= energy;
+		if (regrowth != null && energy > 0) {
+			regrowth.eaten(y * grassSpace.getSizeX() + x);
+		}
 		return energy;
 	}
 
@@ -172,10 +469,13 @@ public class RabbitsGrassSimulationSpace {
 	public boolean moveRabbitAt(int x, int y, int newX, int newY) {
 		boolean retVal = false;
 		if (!isCellOccupied(newX, newY)) {
-			RabbitsGrassSimulationAgent cda = (RabbitsGrassSimulationAgent) rabbitSpace.getObjectAt(x, y);
-			removeRabbitAt(x, y);
-			cda.setXY(newX, newY);
-			rabbitSpace.putObjectAt(newX, newY, cda);
+			int slot = rabbitSpace.get(x, y);
+			rabbitSpace.set(x, y, RabbitGrid.EMPTY);
+			rabbits.setXY(slot, newX, newY);
+			rabbitSpace.set(newX, newY, slot);
+			if (freeCells != null) {
+				freeCells.move(y * rabbitSpace.getSizeX() + x, newY * rabbitSpace.getSizeX() + newX);
+			}
 			retVal = true;
 		}
 		return retVal;
@@ -183,48 +483,120 @@ public class RabbitsGrassSimulationSpace {
 
 	/**
 	 * This method returns the total energy stored in form of grass
-	 * in the space. It iterates all the space and collect the energy
-	 * of each cell (without considering rabbits on it).
-	 * @return int Total energy at current step
-	 */
-	public int getTotalGrassEnergy() {
-		int totalEnergy = 0;
-		for (int i = 0; i < grassSpace.getSizeX(); i++) {
-			for (int j = 0; j < grassSpace.getSizeY(); j++) {
-				totalEnergy += getGrassAt(i, j);
-			}
-		}
-		return totalEnergy;
+	 * in the space (without considering rabbits on it). The total is
+	 * updated every time grass is spread or eaten, so no scan is needed.
+	 * @return long Total energy at current step
+	 */
+	public long getTotalGrassEnergy() {
+		return totalGrassEnergy;
 	}
 	
 	
 	/**
-	 * This method returns the total number of alive rabbits
-	 * in the space. It iterates all the space and collect the rabbits
-	 * of each cell.
-	 * @return int Total number of alive rabbits at current step
+	 * This method returns the total energy of the rabbits allocated
+	 * in the space. The population updates the total when rabbits are
+	 * added, removed or change their energy, so no scan is needed.
+	 * @return long Total energy of alive rabbits at current step
 	 */
-	public int getTotalRabbitsEnergy() {
-		int totalRabbits = 0;
-		for (int i = 0; i < rabbitSpace.getSizeX(); i++) {
-			for (int j = 0; j < rabbitSpace.getSizeY(); j++) {
-				totalRabbits += getRabbitEnergyAt(i, j);
-			}
-		}
-		return totalRabbits;
+	public long getTotalRabbitsEnergy() {
+		return rabbits.getTotalEnergy();
+	}
+
+	/**
+	 * @return int Number of rabbits allocated in the space
+	 */
+	public int getNumRabbits() {
+		return rabbits.size();
+	}
+
+	/**
+	 * @return RabbitPopulation Rabbits allocated in the space
+	 */
+	public RabbitPopulation getRabbits() {
+		return rabbits;
 	}
 	
 	/**
-	 * @return Object2DGrid grassSpace
+	 * @return boolean True if grass grows with the deterministic schedule of scheduleRegrowth
+	 */
+	public boolean hasRegrowthSchedule() {
+		return regrowth != null;
+	}
+
+	/**
+	 * @return long Bytes taken by writeTo
+	 */
+	long checkpointBytes() {
+		return 4 + 4 + 8 + 2 * numCells + rabbits.checkpointBytes() + 4
+				+ (freeCells != null ? freeCells.checkpointBytes() : 0) + 4
+				+ (regrowth != null ? regrowth.checkpointBytes() : 0);
+	}
+
+	/**
+	 * @param out Stream where the state of the space is written
+	 * @throws IOException If the checkpoint cannot be written
+	 */
+	void writeTo(CheckpointStream out) throws IOException {
+		out.putInt(grassSpace.getSizeX());
+		out.putInt(grassSpace.getSizeY());
+		out.putLong(totalGrassEnergy);
+		grassSpace.writeTo(out);
+		rabbits.writeTo(out);
+		out.putInt(freeCells != null ? 1 : 0);
+		if (freeCells != null) {
+			freeCells.writeTo(out);
+		}
+		out.putInt(regrowth != null ? 1 : 0);
+		if (regrowth != null) {
+			regrowth.writeTo(out);
+		}
+	}
+
+	/**
+	 * Replace the state of the space by the one written by writeTo
+	 * @param in Stream from where the state of the space is read
+	 * @throws IOException If the checkpoint cannot be read
+	 */
+	void readFrom(CheckpointStream in) throws IOException {
+		int sizeX = in.getInt();
+		int sizeY = in.getInt();
+		if (sizeX != grassSpace.getSizeX() || sizeY != grassSpace.getSizeY()) {
+			throw new IllegalArgumentException("Checkpoint of a " + sizeX + "x" + sizeY + " grid cannot be restored in a "
+					+ grassSpace.getSizeX() + "x" + grassSpace.getSizeY() + " one");
+		}
+		totalGrassEnergy = in.getLong();
+		grassSpace.readFrom(in);
+		rabbits.readFrom(in);
+		// The free cell index only exists for grids of up to FREE_CELL_INDEX_LIMIT cells
+		if (in.getInt() != 0) {
+			freeCells.readFrom(in);
+		}
+		regrowth = (in.getInt() != 0) ? GrassTimingWheel.readFrom(in, (int) numCells) : null;
+
+		rabbitSpace.clear();
+		for (int slot = 0; slot < rabbits.size(); slot++) {
+			rabbitSpace.set(rabbits.getX(slot), rabbits.getY(slot), slot);
+		}
+	}
+
+	/**
+	 * @return RandomSource Random number generator shared by the space and its rabbits
+	 */
+	public RandomSource getRandom() {
+		return random;
+	}
+
+	/**
+	 * @return GrassGrid grassSpace
 	 */
-	public Object2DGrid getCurrentGrassSpace() {
+	public GrassGrid getCurrentGrassSpace() {
 		return grassSpace;
 	}
 
 	/**
-	 * @return Object2DGrid rabbitSpace
+	 * @return RabbitGrid rabbitSpace
 	 */
-	public Object2DGrid getCurrentRabbitSpace() {
+	public RabbitGrid getCurrentRabbitSpace() {
 		return rabbitSpace;
 	}
 
@@ -0,0 +1,265 @@
+package main;
+
+/**
+ * Class that provides the random numbers of one simulation. Every model owns
+ * its own generator, seeded from its parameters, so several models can run
+ * in the same JVM without contending on Math.random() and every run can be
+ * reproduced from its seed.
+ * The generator is SplitMix64, the algorithm of java.util.SplittableRandom,
+ * which gives the same numbers for the same seed. It is implemented here
+ * because SplittableRandom does not expose its state, which has to be saved
+ * in checkpoints of the simulation. Any change to the generator or to how
+ * the draws are derived from it must stay bit-compatible, or the seeds and
+ * checkpoints recorded by earlier runs would no longer reproduce them. The
+ * only exception was nextBinomial, whose results were wrong for p close to 1
+ * and approximate for large means.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class RandomSource {
+	private static final double MAX_INVERSION_MEAN = 30;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long seed;
+	private long gamma;
+
+	/**
+	 * Constructor of the class RandomSource
+	 * @param seed Seed of the generator
+	 */
+	public RandomSource(long seed) {
+		this(seed, GOLDEN_GAMMA);
+	}
+
+	/**
+	 * Create a generator from a state returned by getSeed and getGamma
+	 * @param seed Current seed of the generator
+	 * @param gamma Increment of the seed, must be odd
+	 */
+	public RandomSource(long seed, long gamma) {
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+
+	/**
+	 * @return long Current seed, which together with the gamma is the full state of the generator
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return long Increment of the seed on every draw
+	 */
+	public long getGamma() {
+		return gamma;
+	}
+
+	private long nextSeed() {
+		return seed += gamma;
+	}
+
+	private static long mix64(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	private static int mix32(long z) {
+		z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+		return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+	}
+
+	/**
+	 * @return long Uniform random long
+	 */
+	public long nextLong() {
+		return mix64(nextSeed());
+	}
+
+	/**
+	 * @param bound Upper bound (exclusive), must be positive
+	 * @return int Uniform random integer in [0, bound)
+	 */
+	public int nextInt(int bound) {
+		int r = mix32(nextSeed());
+		int m = bound - 1;
+		if ((bound & m) == 0) {
+			// Power of two
+			return r & m;
+		}
+		// Reject the values that would make the result biased
+		for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+		}
+		return r;
+	}
+
+	/**
+	 * @return double Uniform random number in [0, 1)
+	 */
+	public double nextDouble() {
+		return (mix64(nextSeed()) >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Draw many uniform integers at once, e.g. the moving direction
+	 * of every rabbit for a whole tick
+	 * @param out Array where the numbers are written
+	 * @param count Number of integers to draw into out[0, count)
+	 * @param bound Upper bound (exclusive) of every integer
+	 */
+	public void nextInts(int[] out, int count, int bound) {
+		for (int i = 0; i < count; i++) {
+			out[i] = nextInt(bound);
+		}
+	}
+
+	/**
+	 * Draw the number of successes of n independent trials with probability p.
+	 * Both methods are exact. For p above 1/2 the failures are drawn instead,
+	 * so the probability of no success never underflows. Up to a mean of
+	 * MAX_INVERSION_MEAN the cumulative distribution is walked from 0
+	 * (inversion); above it, the BTPE rejection method of Kachitvichyanukul and
+	 * Schmeiser (1988) takes a few draws whatever n is.
+	 * @param n Number of trials
+	 * @param p Probability of success of every trial
+	 * @return int Binomial random integer in [0, n]
+	 */
+	public int nextBinomial(int n, double p) {
+		if (n == 0 || p <= 0) {
+			return 0;
+		}
+		if (p >= 1) {
+			return n;
+		}
+		if (p > 0.5) {
+			return n - nextBinomial(n, 1 - p);
+		}
+		if (n * p > MAX_INVERSION_MEAN) {
+			return nextBinomialBtpe(n, p);
+		}
+		// Walk the cumulative distribution until it exceeds a uniform draw
+		double u = nextDouble();
+		double odds = p / (1 - p);
+		double probability = Math.pow(1 - p, n);
+		double cumulative = probability;
+		int k = 0;
+		while (u > cumulative && k < n) {
+			probability *= odds * (n - k) / (k + 1);
+			cumulative += probability;
+			k++;
+		}
+		return k;
+	}
+
+	/**
+	 * BTPE (binomial, triangle, parallelogram, exponential): a draw under a
+	 * hat made of a triangle around the mode, two parallelograms and two
+	 * exponential tails is accepted against the exact probability, which is
+	 * computed from the mode with a recurrence close to it and with
+	 * Stirling's formula far from it.
+	 * @param n Number of trials
+	 * @param p Probability of success of every trial, at most 1/2
+	 * @return int Binomial random integer in [0, n]
+	 */
+	private int nextBinomialBtpe(int n, double p) {
+		double q = 1 - p;
+		double npq = n * p * q;
+		double fm = n * p + p;
+		int m = (int) fm;
+		double p1 = Math.floor(2.195 * Math.sqrt(npq) - 4.6 * q) + 0.5;
+		double xm = m + 0.5;
+		double xl = xm - p1;
+		double xr = xm + p1;
+		double c = 0.134 + 20.5 / (15.3 + m);
+		double a = (fm - xl) / (fm - xl * p);
+		double laml = a * (1 + a / 2);
+		a = (xr - fm) / (xr * q);
+		double lamr = a * (1 + a / 2);
+		double p2 = p1 * (1 + 2 * c);
+		double p3 = p2 + c / laml;
+		double p4 = p3 + c / lamr;
+
+		while (true) {
+			double u = nextDouble() * p4;
+			double v = nextDouble();
+			int y;
+			if (u <= p1) {
+				// Triangle, always accepted
+				return (int) Math.floor(xm - p1 * v + u);
+			} else if (u <= p2) {
+				// Parallelograms
+				double x = xl + (u - p1) / c;
+				v = v * c + 1 - Math.abs(m - x + 0.5) / p1;
+				if (v > 1) {
+					continue;
+				}
+				y = (int) Math.floor(x);
+			} else if (u <= p3) {
+				// Left exponential tail
+				double x = Math.floor(xl + Math.log(v) / laml);
+				if (x < 0 || v == 0) {
+					continue;
+				}
+				y = (int) x;
+				v = v * (u - p2) * laml;
+			} else {
+				// Right exponential tail
+				double x = Math.floor(xr - Math.log(v) / lamr);
+				if (x > n || v == 0) {
+					continue;
+				}
+				y = (int) x;
+				v = v * (u - p3) * lamr;
+			}
+
+			int k = Math.abs(y - m);
+			if (k <= 20 || k >= npq / 2 - 1) {
+				// Ratio of the probabilities of y and of the mode by recurrence
+				double s = p / q;
+				double b = s * (n + 1);
+				double f = 1;
+				for (int i = m + 1; i <= y; i++) {
+					f *= b / i - s;
+				}
+				for (int i = y + 1; i <= m; i++) {
+					f /= b / i - s;
+				}
+				if (v <= f) {
+					return y;
+				}
+				continue;
+			}
+
+			// Squeeze on the logarithm of the ratio, then Stirling's formula
+			double rho = (k / npq) * ((k * (k / 3.0 + 0.625) + 1.0 / 6) / npq + 0.5);
+			double t = -(double) k * k / (2 * npq);
+			double logV = Math.log(v);
+			if (logV < t - rho) {
+				return y;
+			}
+			if (logV > t + rho) {
+				continue;
+			}
+			double x1 = y + 1;
+			double f1 = m + 1;
+			double z = n + 1 - m;
+			double w = n - y + 1;
+			double bound = xm * Math.log(f1 / x1) + (n - m + 0.5) * Math.log(z / w)
+					+ (y - m) * Math.log(w * p / (x1 * q))
+					+ stirling(f1) + stirling(z) + stirling(x1) + stirling(w);
+			if (logV <= bound) {
+				return y;
+			}
+		}
+	}
+
+	/**
+	 * @param x Positive number
+	 * @return double Correction of Stirling's approximation of log(x!), up to 1 / x^9
+	 */
+	private static double stirling(double x) {
+		double x2 = x * x;
+		return (13860 - (462 - (132 - (99 - 140 / x2) / x2) / x2) / x2) / x / 166320;
+	}
+}
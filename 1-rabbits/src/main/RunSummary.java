@@ -0,0 +1,90 @@
+package main;
+
+/**
+ * Class that summarizes the time series of one headless run without storing
+ * it: mean, minimum and maximum number of rabbits, mean energies, the values
+ * at the last tick, the tick in which rabbits went extinct (if they did) and
+ * why the run ended.
+ * The statistics cover the ticks that were simulated, so a run that stopped
+ * early is summarized up to its last tick.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class RunSummary implements TimeSeriesSink {
+	public static final String HEADER = "mean_rabbits,min_rabbits,max_rabbits,mean_grass_energy,"
+			+ "mean_rabbits_energy,final_rabbits,final_grass_energy,final_rabbits_energy,extinction_tick,"
+			+ "final_tick,end_reason";
+
+	private long samples;
+	private double sumRabbits;
+	private double sumGrassEnergy;
+	private double sumRabbitsEnergy;
+	private int minRabbits = Integer.MAX_VALUE;
+	private int maxRabbits = Integer.MIN_VALUE;
+	private int finalRabbits;
+	private long finalGrassEnergy;
+	private long finalRabbitsEnergy;
+	private long extinctionTick = -1;
+	private long finalTick;
+	private String endReason = TerminationDetector.TICK_BUDGET;
+
+	public void record(long tick, int rabbits, long grassEnergy, long rabbitsEnergy) {
+		samples++;
+		sumRabbits += rabbits;
+		sumGrassEnergy += grassEnergy;
+		sumRabbitsEnergy += rabbitsEnergy;
+		minRabbits = Math.min(minRabbits, rabbits);
+		maxRabbits = Math.max(maxRabbits, rabbits);
+		finalRabbits = rabbits;
+		finalGrassEnergy = grassEnergy;
+		finalRabbitsEnergy = rabbitsEnergy;
+		finalTick = tick;
+		if (rabbits == 0 && extinctionTick < 0) {
+			extinctionTick = tick;
+		}
+	}
+
+	/**
+	 * Nothing to store, the summary is kept in memory
+	 */
+	public void close() {
+	}
+
+	/**
+	 * @return double Mean number of rabbits over the recorded ticks
+	 */
+	public double getMeanRabbits() {
+		return sumRabbits / samples;
+	}
+
+	/**
+	 * @return long Tick in which the last rabbit died, -1 if they survived
+	 */
+	public long getExtinctionTick() {
+		return extinctionTick;
+	}
+
+	/**
+	 * @param endReason Why the run stopped before its tick budget, as in
+	 * TerminationDetector, or null if it used all its ticks
+	 */
+	public void setEndReason(String endReason) {
+		this.endReason = (endReason != null) ? endReason : TerminationDetector.TICK_BUDGET;
+	}
+
+	/**
+	 * @return String Why the run ended, TerminationDetector.TICK_BUDGET if it used all its ticks
+	 */
+	public String getEndReason() {
+		return endReason;
+	}
+
+	/**
+	 * @return String Values of the summary in the order of HEADER, comma separated
+	 */
+	public String toCsv() {
+		return getMeanRabbits() + "," + minRabbits + "," + maxRabbits + "," + sumGrassEnergy / samples + ","
+				+ sumRabbitsEnergy / samples + "," + finalRabbits + "," + finalGrassEnergy + ","
+				+ finalRabbitsEnergy + "," + extinctionTick + "," + finalTick + "," + endReason;
+	}
+}
@@ -0,0 +1,61 @@
+package main;
+
+import java.awt.Color;
+
+import uchicago.src.sim.analysis.plot.OpenGraph;
+import uchicago.src.sim.engine.SimModel;
+
+/**
+ * Graph of the last ticks of some columns of a StreamingSeries. Unlike
+ * OpenSequenceGraph, which keeps every sample of the run, the graph is
+ * redrawn from the ring buffer of the series on every update, so it never
+ * holds more points than the window of the series.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class SeriesWindowGraph extends OpenGraph {
+	private final StreamingSeries series;
+	private final int[] columns;
+
+	/**
+	 * Constructor of the class SeriesWindowGraph
+	 * @param title Title of the window of the graph
+	 * @param model Model that owns the graph
+	 * @param series Series whose window is drawn
+	 * @param columns Columns of the series that are drawn, one line each
+	 * @param names Legend of every column
+	 * @param colors Color of every column
+	 */
+	public SeriesWindowGraph(String title, SimModel model, StreamingSeries series, int[] columns, String[] names,
+			Color[] colors) {
+		super(title);
+		this.model = model;
+		this.series = series;
+		this.columns = columns;
+		for (int i = 0; i < columns.length; i++) {
+			plot.addLegend(i, names[i], colors[i]);
+		}
+		plot.setDrawOnAddPoint(false);
+	}
+
+	/**
+	 * Nothing to record, the series is fed by the model after every tick
+	 */
+	public void record() {
+	}
+
+	public void updateGraph() {
+		int count = series.getWindowCount();
+		if (count == 0) {
+			return;
+		}
+		plot.clearPoints();
+		for (int i = 0; i < columns.length; i++) {
+			for (int j = 0; j < count; j++) {
+				plot.addPoint(i, series.getWindowTick(j), series.getWindowValue(columns[i], j), j > 0);
+			}
+		}
+		// Rescale the axes to the points of the window and repaint
+		plot.fillPlot();
+	}
+}
@@ -0,0 +1,133 @@
+package main;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Class that saves and restores the full state of a rabbits grass simulation
+ * in a memory-mapped binary file: the tick, the last rabbit identifier, the
+ * state of the random number generator and the space (grass, rabbits, free
+ * cells and regrowth schedule). The arrays are copied in bulk, so a snapshot
+ * costs little more than copying the memory of the simulation. The file is
+ * mapped in regions of at most 1GB (see CheckpointStream), so the grids of
+ * billions of cells can be checkpointed as well.
+ * A restored simulation continues exactly as the original one would have,
+ * unless its parameters are changed, which allows to fork many continuations
+ * of the same warmed-up state.
+ * The file is written next to its destination and then renamed, so a crash
+ * while saving never leaves a broken checkpoint behind.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class SimulationCheckpoint {
+	private static final int MAGIC = 0x5247434b; // "RGCK"
+	private static final int VERSION = 4;
+	private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 8;
+
+	private final long tick;
+	private final long lastRabbitID;
+	private final RandomSource random;
+	private final CheckpointStream in;
+
+	private SimulationCheckpoint(long tick, long lastRabbitID, RandomSource random, CheckpointStream in) {
+		this.tick = tick;
+		this.lastRabbitID = lastRabbitID;
+		this.random = random;
+		this.in = in;
+	}
+
+	/**
+	 * Save the state of a simulation
+	 * @param fileName Path of the checkpoint, replaced if it exists
+	 * @param tick Number of ticks performed
+	 * @param lastRabbitID Last identifier given to a rabbit
+	 * @param random Random number generator of the simulation
+	 * @param space Space of the simulation
+	 * @throws IOException If the file cannot be written
+	 */
+	public static void save(String fileName, long tick, long lastRabbitID, RandomSource random,
+			RabbitsGrassSimulationSpace space) throws IOException {
+		long size = HEADER_BYTES + space.checkpointBytes();
+		Path target = Paths.get(fileName);
+		Path tmp = Paths.get(fileName + ".tmp");
+		FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		CheckpointStream out = new CheckpointStream(channel, FileChannel.MapMode.READ_WRITE, size);
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putLong(tick);
+			out.putLong(lastRabbitID);
+			out.putLong(random.getSeed());
+			out.putLong(random.getGamma());
+			space.writeTo(out);
+		} finally {
+			out.close();
+		}
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Open a checkpoint and read its header. The space is read with
+	 * readSpace, which closes the file.
+	 * @param fileName Path of the checkpoint
+	 * @return SimulationCheckpoint Checkpoint ready to restore the space
+	 * @throws IOException If the file cannot be read or is not a checkpoint
+	 */
+	public static SimulationCheckpoint load(String fileName) throws IOException {
+		FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+		CheckpointStream in = new CheckpointStream(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+		try {
+			if (channel.size() < HEADER_BYTES || in.getInt() != MAGIC || in.getInt() != VERSION) {
+				throw new IOException(fileName + " is not a checkpoint of this version of the simulation");
+			}
+			long tick = in.getLong();
+			long lastRabbitID = in.getLong();
+			RandomSource random = new RandomSource(in.getLong(), in.getLong());
+			return new SimulationCheckpoint(tick, lastRabbitID, random, in);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return long Number of ticks performed when the checkpoint was saved
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * @return long Last identifier given to a rabbit
+	 */
+	public long getLastRabbitID() {
+		return lastRabbitID;
+	}
+
+	/**
+	 * @return RandomSource Generator in the state it had when the checkpoint was saved
+	 */
+	public RandomSource getRandom() {
+		return random;
+	}
+
+	/**
+	 * Restore the state of a space, which must have the size of the saved one
+	 * and use the generator of getRandom, and close the checkpoint
+	 * @param space Space that is overwritten
+	 * @throws IOException If the file cannot be read
+	 */
+	public void readSpace(RabbitsGrassSimulationSpace space) throws IOException {
+		try {
+			space.readFrom(in);
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,195 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Class that receives the population and energy time series with bounded
+ * memory, however long the run is. The last ticks are kept in a ring buffer
+ * of fixed size, which is what the on-screen graphs show. Optionally, the
+ * full history is appended to a file in compressed chunks of CHUNK_TICKS
+ * ticks, together with an index file that records where every chunk starts
+ * and the minimum, maximum and sum of every column in it, so that
+ * StreamingSeriesReader can downsample the history one chunk at a time.
+ * Inside a chunk every column is stored as variable-length differences
+ * between consecutive ticks before compression. All the columns are longs,
+ * since the energies of large grids overflow an int.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class StreamingSeries implements TimeSeriesSink {
+	public static final int MAGIC = 0x52475343; // "RGSC"
+	public static final int VERSION = 2;
+	public static final int COLUMNS = 3;
+	public static final int RABBITS = 0;
+	public static final int GRASS_ENERGY = 1;
+	public static final int RABBITS_ENERGY = 2;
+	public static final String INDEX_SUFFIX = ".idx";
+	public static final int CHUNK_TICKS = 4096;
+	// First tick, number of ticks, offset and length of the chunk, then min, max and sum of every column
+	public static final int INDEX_RECORD_BYTES = 8 + 4 + 8 + 4 + COLUMNS * (8 + 8 + 8);
+
+	private final int window;
+	private final long[] windowTicks;
+	private final long[][] windowValues;
+	private int windowStart;
+	private int windowCount;
+
+	private DataOutputStream data;
+	private DataOutputStream index;
+	private long dataOffset;
+	private final long[] chunkTicks = new long[CHUNK_TICKS];
+	private final long[][] chunkValues = new long[COLUMNS][CHUNK_TICKS];
+	private int chunkCount;
+	private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+	/**
+	 * Constructor of the class StreamingSeries
+	 * @param window Number of last ticks kept in memory, at least 1
+	 * @param fileName Path of the history file (its index is fileName + INDEX_SUFFIX),
+	 * or null to keep only the window
+	 * @throws IOException If the files cannot be created
+	 */
+	public StreamingSeries(int window, String fileName) throws IOException {
+		if (window < 1) {
+			throw new IllegalArgumentException("The window of a series must hold at least 1 tick");
+		}
+		this.window = window;
+		this.windowTicks = new long[window];
+		this.windowValues = new long[COLUMNS][window];
+		if (fileName != null) {
+			data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+			index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName + INDEX_SUFFIX)));
+			data.writeInt(MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(COLUMNS);
+			dataOffset = 12;
+		}
+	}
+
+	public void record(long tick, int rabbits, long grassEnergy, long rabbitsEnergy) throws IOException {
+		int position = (windowStart + windowCount) % window;
+		if (windowCount == window) {
+			windowStart = (windowStart + 1) % window;
+		} else {
+			windowCount++;
+		}
+		windowTicks[position] = tick;
+		windowValues[RABBITS][position] = rabbits;
+		windowValues[GRASS_ENERGY][position] = grassEnergy;
+		windowValues[RABBITS_ENERGY][position] = rabbitsEnergy;
+
+		if (data == null) {
+			return;
+		}
+		// Ticks are consecutive inside a chunk
+		if (chunkCount == CHUNK_TICKS || (chunkCount > 0 && tick != chunkTicks[chunkCount - 1] + 1)) {
+			flushChunk();
+		}
+		chunkTicks[chunkCount] = tick;
+		chunkValues[RABBITS][chunkCount] = rabbits;
+		chunkValues[GRASS_ENERGY][chunkCount] = grassEnergy;
+		chunkValues[RABBITS_ENERGY][chunkCount] = rabbitsEnergy;
+		chunkCount++;
+	}
+
+	/**
+	 * Compress the pending ticks, append them to the history file and their
+	 * summary to the index
+	 */
+	private void flushChunk() throws IOException {
+		if (chunkCount == 0) {
+			return;
+		}
+		compressed.reset();
+		deflater.reset();
+		DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(compressed, deflater, 1 << 12));
+		for (int column = 0; column < COLUMNS; column++) {
+			long previous = 0;
+			for (int i = 0; i < chunkCount; i++) {
+				long value = chunkValues[column][i];
+				writeVarLong(out, value - previous);
+				previous = value;
+			}
+		}
+		out.close();
+
+		compressed.writeTo(data);
+		index.writeLong(chunkTicks[0]);
+		index.writeInt(chunkCount);
+		index.writeLong(dataOffset);
+		index.writeInt(compressed.size());
+		for (int column = 0; column < COLUMNS; column++) {
+			long min = Long.MAX_VALUE;
+			long max = Long.MIN_VALUE;
+			long sum = 0;
+			for (int i = 0; i < chunkCount; i++) {
+				long value = chunkValues[column][i];
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				sum += value;
+			}
+			index.writeLong(min);
+			index.writeLong(max);
+			index.writeLong(sum);
+		}
+		dataOffset += compressed.size();
+		chunkCount = 0;
+	}
+
+	/**
+	 * Write a signed integer in zig-zag encoding with 7 bits per byte, so
+	 * small differences take a single byte
+	 */
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while ((zigzag & ~0x7fL) != 0) {
+			out.writeByte((int) (zigzag & 0x7f) | 0x80);
+			zigzag >>>= 7;
+		}
+		out.writeByte((int) zigzag);
+	}
+
+	/**
+	 * @return int Number of ticks in the window, at most its size
+	 */
+	public int getWindowCount() {
+		return windowCount;
+	}
+
+	/**
+	 * @param i Position in the window, 0 being the oldest tick
+	 * @return long Tick recorded at that position
+	 */
+	public long getWindowTick(int i) {
+		return windowTicks[(windowStart + i) % window];
+	}
+
+	/**
+	 * @param column One of RABBITS, GRASS_ENERGY and RABBITS_ENERGY
+	 * @param i Position in the window, 0 being the oldest tick
+	 * @return long Value of the column at that position
+	 */
+	public long getWindowValue(int column, int i) {
+		return windowValues[column][(windowStart + i) % window];
+	}
+
+	/**
+	 * Write the pending ticks to the history file, if any, and close it
+	 */
+	public void close() throws IOException {
+		if (data != null) {
+			flushChunk();
+			data.close();
+			index.close();
+			deflater.end();
+			data = null;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Class that reads the history written by StreamingSeries. Only the index is
+ * kept in memory; downsampling decompresses one chunk at a time, and chunks
+ * that fall entirely inside one bucket are merged from their summary in the
+ * index without being read at all.
+ * Usage: StreamingSeriesReader historyFile numBuckets [fromTick toTick]
+ * prints the minimum, maximum and mean of every column per bucket as CSV.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class StreamingSeriesReader {
+	private final String fileName;
+	private final int numChunks;
+	private final long[] firstTick;
+	private final int[] count;
+	private final long[] offset;
+	private final int[] length;
+	private final long[][] min;
+	private final long[][] max;
+	private final long[][] sum;
+
+	/**
+	 * Constructor of the class StreamingSeriesReader, which reads the index
+	 * @param fileName Path of the history file
+	 * @throws IOException If the files cannot be read or are not a history
+	 */
+	public StreamingSeriesReader(String fileName) throws IOException {
+		this.fileName = fileName;
+		DataInputStream header = new DataInputStream(new FileInputStream(fileName));
+		try {
+			if (header.readInt() != StreamingSeries.MAGIC || header.readInt() != StreamingSeries.VERSION
+					|| header.readInt() != StreamingSeries.COLUMNS) {
+				throw new IOException(fileName + " is not a time series history of this version");
+			}
+		} finally {
+			header.close();
+		}
+
+		String indexName = fileName + StreamingSeries.INDEX_SUFFIX;
+		RandomAccessFile indexFile = new RandomAccessFile(indexName, "r");
+		try {
+			// A record cut by a crash while writing is ignored
+			numChunks = (int) (indexFile.length() / StreamingSeries.INDEX_RECORD_BYTES);
+		} finally {
+			indexFile.close();
+		}
+		firstTick = new long[numChunks];
+		count = new int[numChunks];
+		offset = new long[numChunks];
+		length = new int[numChunks];
+		min = new long[StreamingSeries.COLUMNS][numChunks];
+		max = new long[StreamingSeries.COLUMNS][numChunks];
+		sum = new long[StreamingSeries.COLUMNS][numChunks];
+
+		DataInputStream index = new DataInputStream(new BufferedInputStream(new FileInputStream(indexName)));
+		try {
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				firstTick[chunk] = index.readLong();
+				count[chunk] = index.readInt();
+				offset[chunk] = index.readLong();
+				length[chunk] = index.readInt();
+				for (int column = 0; column < StreamingSeries.COLUMNS; column++) {
+					min[column][chunk] = index.readLong();
+					max[column][chunk] = index.readLong();
+					sum[column][chunk] = index.readLong();
+				}
+			}
+		} finally {
+			index.close();
+		}
+	}
+
+	/**
+	 * @return long First tick of the history, or 0 if it is empty
+	 */
+	public long getFirstTick() {
+		return (numChunks == 0) ? 0 : firstTick[0];
+	}
+
+	/**
+	 * @return long Last tick of the history, or -1 if it is empty
+	 */
+	public long getLastTick() {
+		return (numChunks == 0) ? -1 : firstTick[numChunks - 1] + count[numChunks - 1] - 1;
+	}
+
+	/**
+	 * Decompress the values of every column of one chunk
+	 * @param file History file
+	 * @param chunk Number of the chunk
+	 * @param buffer Array large enough for the compressed chunk
+	 * @param values Array of at least CHUNK_TICKS values per column, overwritten
+	 */
+	private void readChunk(RandomAccessFile file, int chunk, byte[] buffer, long[][] values) throws IOException {
+		file.seek(offset[chunk]);
+		file.readFully(buffer, 0, length[chunk]);
+		DataInputStream in = new DataInputStream(
+				new InflaterInputStream(new ByteArrayInputStream(buffer, 0, length[chunk])));
+		try {
+			for (int column = 0; column < StreamingSeries.COLUMNS; column++) {
+				long value = 0;
+				for (int i = 0; i < count[chunk]; i++) {
+					value += readVarLong(in);
+					values[column][i] = value;
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long zigzag = 0;
+		int shift = 0;
+		int b;
+		do {
+			b = in.readUnsignedByte();
+			zigzag |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+
+	/**
+	 * Split the ticks [fromTick, toTick] in buckets of equal length and
+	 * compute the minimum, maximum and mean of one column in each of them
+	 * @param column One of the columns of StreamingSeries, e.g. StreamingSeries.RABBITS
+	 * @param fromTick First tick of the first bucket
+	 * @param toTick Last tick of the last bucket
+	 * @param numBuckets Number of buckets
+	 * @return double[][] Minimum, maximum and mean of every bucket, NaN if it has no tick
+	 * @throws IOException If the history cannot be read
+	 */
+	public double[][] downsample(int column, long fromTick, long toTick, int numBuckets) throws IOException {
+		double[] bucketMin = new double[numBuckets];
+		double[] bucketMax = new double[numBuckets];
+		double[] bucketSum = new double[numBuckets];
+		long[] bucketCount = new long[numBuckets];
+		Arrays.fill(bucketMin, Double.POSITIVE_INFINITY);
+		Arrays.fill(bucketMax, Double.NEGATIVE_INFINITY);
+		double ticksPerBucket = (double) (toTick - fromTick + 1) / numBuckets;
+
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			byte[] buffer = new byte[0];
+			long[][] values = new long[StreamingSeries.COLUMNS][StreamingSeries.CHUNK_TICKS];
+			for (int chunk = 0; chunk < numChunks; chunk++) {
+				long first = firstTick[chunk];
+				long last = first + count[chunk] - 1;
+				if (last < fromTick || first > toTick) {
+					continue;
+				}
+				int firstBucket = bucketOf(first, fromTick, ticksPerBucket, numBuckets);
+				int lastBucket = bucketOf(last, fromTick, ticksPerBucket, numBuckets);
+				if (first >= fromTick && last <= toTick && firstBucket == lastBucket) {
+					// The whole chunk falls in one bucket, its summary is enough
+					bucketMin[firstBucket] = Math.min(bucketMin[firstBucket], min[column][chunk]);
+					bucketMax[firstBucket] = Math.max(bucketMax[firstBucket], max[column][chunk]);
+					bucketSum[firstBucket] += sum[column][chunk];
+					bucketCount[firstBucket] += count[chunk];
+					continue;
+				}
+
+				if (buffer.length < length[chunk]) {
+					buffer = new byte[length[chunk]];
+				}
+				readChunk(file, chunk, buffer, values);
+				for (int i = 0; i < count[chunk]; i++) {
+					long tick = first + i;
+					if (tick < fromTick || tick > toTick) {
+						continue;
+					}
+					int bucket = bucketOf(tick, fromTick, ticksPerBucket, numBuckets);
+					long value = values[column][i];
+					bucketMin[bucket] = Math.min(bucketMin[bucket], value);
+					bucketMax[bucket] = Math.max(bucketMax[bucket], value);
+					bucketSum[bucket] += value;
+					bucketCount[bucket]++;
+				}
+			}
+		} finally {
+			file.close();
+		}
+
+		double[] bucketMean = new double[numBuckets];
+		for (int bucket = 0; bucket < numBuckets; bucket++) {
+			if (bucketCount[bucket] == 0) {
+				bucketMin[bucket] = Double.NaN;
+				bucketMax[bucket] = Double.NaN;
+				bucketMean[bucket] = Double.NaN;
+			} else {
+				bucketMean[bucket] = bucketSum[bucket] / bucketCount[bucket];
+			}
+		}
+		return new double[][] { bucketMin, bucketMax, bucketMean };
+	}
+
+	private static int bucketOf(long tick, long fromTick, double ticksPerBucket, int numBuckets) {
+		int bucket = (int) ((tick - fromTick) / ticksPerBucket);
+		return Math.max(0, Math.min(numBuckets - 1, bucket));
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.out.println("Usage: StreamingSeriesReader historyFile numBuckets [fromTick toTick]");
+			return;
+		}
+
+		StreamingSeriesReader reader = new StreamingSeriesReader(args[0]);
+		int numBuckets = Integer.parseInt(args[1]);
+		long fromTick = (args.length > 3) ? Long.parseLong(args[2]) : reader.getFirstTick();
+		long toTick = (args.length > 3) ? Long.parseLong(args[3]) : reader.getLastTick();
+
+		String[] names = { "rabbits", "grass_energy", "rabbits_energy" };
+		double[][][] columns = new double[StreamingSeries.COLUMNS][][];
+		StringBuilder header = new StringBuilder("from_tick");
+		for (int column = 0; column < StreamingSeries.COLUMNS; column++) {
+			columns[column] = reader.downsample(column, fromTick, toTick, numBuckets);
+			header.append(',').append(names[column]).append("_min,").append(names[column]).append("_max,")
+					.append(names[column]).append("_mean");
+		}
+		System.out.println(header);
+		double ticksPerBucket = (double) (toTick - fromTick + 1) / numBuckets;
+		for (int bucket = 0; bucket < numBuckets; bucket++) {
+			StringBuilder line = new StringBuilder();
+			line.append(fromTick + (long) Math.ceil(bucket * ticksPerBucket));
+			for (int column = 0; column < StreamingSeries.COLUMNS; column++) {
+				line.append(',').append(columns[column][0][bucket]).append(',').append(columns[column][1][bucket])
+						.append(',').append(columns[column][2][bucket]);
+			}
+			System.out.println(line);
+		}
+	}
+
+}
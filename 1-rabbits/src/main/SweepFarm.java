@@ -0,0 +1,388 @@
+package main;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class that spreads a ParameterSweep over several worker JVMs on the same
+ * machine, through a queue of files in the directory outputFile.queue:
+ * - sweep.args holds the arguments of the sweep, read by the workers;
+ * - pending/i is point number i waiting for a worker;
+ * - claimed/i.worker is point i being simulated by a worker, claimed by
+ *   renaming the pending file, which only one worker can do. The worker
+ *   touches the file every HEARTBEAT_MS as a lease;
+ * - done/i holds the CSV line of point i, written aside and then renamed;
+ * - failed/i holds the error of a point that could not be simulated.
+ * The coordinator starts the workers and appends the results to the output
+ * file as they arrive. When a worker dies, its points go back to pending and
+ * it is restarted; claims whose lease is older than LEASE_MS are also put
+ * back, so workers started by hand (SweepFarm --worker) are covered too. A
+ * point that keeps killing its workers fails after MAX_ATTEMPTS.
+ * If the coordinator is interrupted, running it again with the same
+ * arguments resumes the sweep: the points in done are not simulated again,
+ * and the failed ones are retried. The queue is deleted once every point
+ * has finished.
+ * Usage: SweepFarm numTicks outputFile numWorkers [Parameter=range ...]
+ * with the ranges of ParameterSweep. The results are in order of completion.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class SweepFarm {
+	private static final long POLL_MS = 200;
+	private static final long HEARTBEAT_MS = 1000;
+	private static final long LEASE_MS = 10000;
+	private static final int MAX_ATTEMPTS = 3;
+	private static final String ARGS_FILE = "sweep.args";
+
+	private final Path queue;
+	private final Path pending;
+	private final Path claimed;
+	private final Path done;
+	private final Path failed;
+	private volatile Path lease;
+
+	/**
+	 * Constructor of the class SweepFarm
+	 * @param queueDir Directory of the queue, shared by the coordinator and the workers
+	 */
+	public SweepFarm(String queueDir) {
+		queue = Paths.get(queueDir);
+		pending = queue.resolve("pending");
+		claimed = queue.resolve("claimed");
+		done = queue.resolve("done");
+		failed = queue.resolve("failed");
+	}
+
+	/**
+	 * Fill the queue, or recover the one of an interrupted run of the same sweep
+	 * @param sweepArgs numTicks followed by the ranges of the sweep
+	 * @param numPoints Number of points of the sweep
+	 * @throws IOException If the queue cannot be written or holds another sweep
+	 */
+	private void prepare(String[] sweepArgs, int numPoints) throws IOException {
+		Files.createDirectories(pending);
+		Files.createDirectories(claimed);
+		Files.createDirectories(done);
+		Files.createDirectories(failed);
+		Path argsFile = queue.resolve(ARGS_FILE);
+		List<String> args = Arrays.asList(sweepArgs);
+		if (Files.exists(argsFile)) {
+			if (!Files.readAllLines(argsFile, StandardCharsets.UTF_8).equals(args)) {
+				throw new IOException(queue + " holds the queue of another sweep");
+			}
+		} else {
+			Files.write(argsFile, args, StandardCharsets.UTF_8);
+		}
+
+		// No worker of a previous coordinator is left, so its claims and failures are run again
+		for (String name : list(claimed)) {
+			move(claimed.resolve(name), pending.resolve(indexOf(name)));
+		}
+		for (String name : list(failed)) {
+			move(failed.resolve(name), pending.resolve(name));
+		}
+		for (int i = 0; i < numPoints; i++) {
+			String name = Integer.toString(i);
+			if (!Files.exists(done.resolve(name)) && !Files.exists(pending.resolve(name))) {
+				Files.createFile(pending.resolve(name));
+			}
+		}
+	}
+
+	/**
+	 * Run the sweep as the coordinator
+	 * @param sweepArgs numTicks followed by the ranges of the sweep
+	 * @param numWorkers Number of worker processes
+	 * @param outputFile Path of the CSV file with the results
+	 * @return int Number of points that failed
+	 * @throws IOException If the queue or the output file cannot be written
+	 * @throws InterruptedException If the coordinator is interrupted, leaving the queue to resume later
+	 */
+	public int coordinate(String[] sweepArgs, int numWorkers, String outputFile)
+			throws IOException, InterruptedException {
+		ParameterSweep sweep = ParameterSweep.fromArgs(sweepArgs[0], sweepArgs, 1);
+		int numPoints = sweep.getPoints().size();
+		prepare(sweepArgs, numPoints);
+
+		// The results of a previous run are written first, in the order of the points
+		boolean[] emitted = new boolean[numPoints];
+		int numEmitted = 0;
+		PrintWriter out = new PrintWriter(new FileWriter(outputFile));
+		out.println(sweep.getHeader());
+		for (int i = 0; i < numPoints; i++) {
+			Path result = done.resolve(Integer.toString(i));
+			if (Files.exists(result)) {
+				out.println(new String(Files.readAllBytes(result), StandardCharsets.UTF_8).trim());
+				emitted[i] = true;
+				numEmitted++;
+			}
+		}
+		out.flush();
+
+		final Process[] workers = new Process[numWorkers];
+		Map<String, Process> startedWorkers = new HashMap<String, Process>();
+		// Interrupting the coordinator stops its workers too, the next run resumes the queue
+		Thread stopWorkers = new Thread(new Runnable() {
+			public void run() {
+				destroy(workers);
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(stopWorkers);
+		int[] attempts = new int[numPoints];
+		int started = 0;
+		int numFailed = 0;
+		try {
+			while (numEmitted + numFailed < numPoints) {
+				for (String name : list(done)) {
+					if (name.indexOf('.') < 0 && !emitted[Integer.parseInt(name)]) {
+						out.println(new String(Files.readAllBytes(done.resolve(name)), StandardCharsets.UTF_8).trim());
+						out.flush();
+						emitted[Integer.parseInt(name)] = true;
+						numEmitted++;
+					}
+				}
+
+				long expired = System.currentTimeMillis() - LEASE_MS;
+				for (String name : list(claimed)) {
+					Path claim = claimed.resolve(name);
+					// Workers started elsewhere are only known by their lease
+					Process worker = startedWorkers.get(name.substring(name.indexOf('.') + 1));
+					boolean dead = worker != null && !worker.isAlive();
+					try {
+						if (dead || Files.getLastModifiedTime(claim).toMillis() < expired) {
+							int index = Integer.parseInt(indexOf(name));
+							attempts[index]++;
+							if (attempts[index] >= MAX_ATTEMPTS) {
+								move(claim, failed.resolve(indexOf(name)));
+								System.out.println("Point " + index + " killed its worker " + attempts[index] + " times");
+							} else {
+								move(claim, pending.resolve(indexOf(name)));
+							}
+						}
+					} catch (NoSuchFileException e) {
+						// The worker has just finished the point
+					}
+				}
+				numFailed = list(failed).size();
+
+				boolean waiting = !list(pending).isEmpty();
+				for (int w = 0; w < numWorkers; w++) {
+					if (waiting && (workers[w] == null || !workers[w].isAlive())) {
+						String workerID = "w" + started++;
+						workers[w] = startWorker(workerID);
+						startedWorkers.put(workerID, workers[w]);
+					}
+				}
+				Thread.sleep(POLL_MS);
+			}
+		} finally {
+			destroy(workers);
+			Runtime.getRuntime().removeShutdownHook(stopWorkers);
+			out.close();
+		}
+
+		for (String name : list(failed)) {
+			System.out.println("Point " + name + " failed: "
+					+ new String(Files.readAllBytes(failed.resolve(name)), StandardCharsets.UTF_8).trim());
+		}
+		if (numFailed == 0) {
+			delete(queue);
+		}
+		return numFailed;
+	}
+
+	private static void destroy(Process[] workers) {
+		for (Process worker : workers) {
+			if (worker != null) {
+				worker.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Start a worker process with the same Java, class path and JVM options
+	 * @param workerID Name of the worker in its claims
+	 * @return Process Worker process, sharing the output of the coordinator
+	 */
+	private Process startWorker(String workerID) throws IOException {
+		List<String> command = new ArrayList<String>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(SweepFarm.class.getName());
+		command.add("--worker=" + queue);
+		command.add(workerID);
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+	/**
+	 * Simulate points of the queue until none is pending
+	 * @param workerID Name of the worker, unique among the workers of the queue
+	 * @throws IOException If the queue cannot be read or written
+	 */
+	public void work(String workerID) throws IOException {
+		List<String> args = Files.readAllLines(queue.resolve(ARGS_FILE), StandardCharsets.UTF_8);
+		String[] sweepArgs = args.toArray(new String[args.size()]);
+		ParameterSweep sweep = ParameterSweep.fromArgs(sweepArgs[0], sweepArgs, 1);
+
+		Thread heartbeat = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (true) {
+						Path current = lease;
+						if (current != null) {
+							try {
+								touch(current);
+							} catch (IOException e) {
+								// The point has finished or has been taken back
+							}
+						}
+						Thread.sleep(HEARTBEAT_MS);
+					}
+				} catch (InterruptedException e) {
+					// The worker has finished
+				}
+			}
+		}, "Heartbeat of " + workerID);
+		heartbeat.setDaemon(true);
+		heartbeat.start();
+
+		try {
+			List<String> names = list(pending);
+			while (!names.isEmpty()) {
+				for (String name : names) {
+					Path claim = claimed.resolve(name + "." + workerID);
+					try {
+						// A rename keeps the time of the file, which starts the lease
+						touch(pending.resolve(name));
+						move(pending.resolve(name), claim);
+					} catch (NoSuchFileException e) {
+						// Another worker claimed it first
+						continue;
+					}
+					lease = claim;
+					runPoint(sweep, Integer.parseInt(name), workerID);
+					lease = null;
+					Files.deleteIfExists(claim);
+				}
+				names = list(pending);
+			}
+		} finally {
+			heartbeat.interrupt();
+		}
+	}
+
+	/**
+	 * Simulate one point and write its result, or its error if it fails
+	 */
+	private void runPoint(ParameterSweep sweep, int index, String workerID) throws IOException {
+		String name = Integer.toString(index);
+		if (Files.exists(done.resolve(name))) {
+			// Finished by a worker whose lease expired
+			return;
+		}
+		String line;
+		Path target;
+		try {
+			line = sweep.toCsv(index, sweep.runPoint(index));
+			target = done.resolve(name);
+		} catch (RuntimeException e) {
+			StringWriter trace = new StringWriter();
+			e.printStackTrace(new PrintWriter(trace));
+			line = trace.toString();
+			target = failed.resolve(name);
+		}
+		Path tmp = target.resolveSibling(name + "." + workerID + ".tmp");
+		Files.write(tmp, line.getBytes(StandardCharsets.UTF_8));
+		move(tmp, target);
+	}
+
+	private static void touch(Path path) throws IOException {
+		Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+	}
+
+	private static void move(Path from, Path to) throws IOException {
+		Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @param name Name of a claim, "index.worker"
+	 * @return String Index of the point
+	 */
+	private static String indexOf(String name) {
+		int dot = name.indexOf('.');
+		return (dot < 0) ? name : name.substring(0, dot);
+	}
+
+	/**
+	 * @param directory Directory of the queue
+	 * @return List Names of its files, without the ones still being written
+	 */
+	private static List<String> list(Path directory) throws IOException {
+		List<String> names = new ArrayList<String>();
+		DirectoryStream<Path> stream = Files.newDirectoryStream(directory);
+		try {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				if (!name.endsWith(".tmp")) {
+					names.add(name);
+				}
+			}
+		} finally {
+			stream.close();
+		}
+		return names;
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+			try {
+				for (Path child : stream) {
+					delete(child);
+				}
+			} finally {
+				stream.close();
+			}
+		}
+		Files.deleteIfExists(path);
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length == 2 && args[0].startsWith("--worker=")) {
+			new SweepFarm(args[0].substring("--worker=".length())).work(args[1]);
+			return;
+		}
+		if (args.length < 3) {
+			System.out.println("Usage: SweepFarm numTicks outputFile numWorkers [Parameter=range ...]");
+			System.out.println("       SweepFarm --worker=queueDir workerID");
+			return;
+		}
+
+		String[] sweepArgs = new String[args.length - 2];
+		sweepArgs[0] = args[0];
+		System.arraycopy(args, 3, sweepArgs, 1, args.length - 3);
+		SweepFarm farm = new SweepFarm(args[1] + ".queue");
+		long start = System.nanoTime();
+		int numFailed = farm.coordinate(sweepArgs, Integer.parseInt(args[2]), args[1]);
+		long end = System.nanoTime();
+		System.out.println("Sweep finished in " + (end - start) * 1e-9 + "s, " + numFailed + " points failed");
+	}
+}
@@ -0,0 +1,98 @@
+package main;
+
+/**
+ * Class that decides when a run of the rabbits grass simulation can stop
+ * before its tick budget because its outcome is already known:
+ * - extinction: there are no rabbits left, so only grass grows from then on;
+ * - saturation: every cell is occupied by a rabbit;
+ * - steady state: over the last window ticks, the mean grass energy and the
+ *   mean rabbits energy of the newer half of the window differ from the ones
+ *   of the older half by less than tolerance times the mean of the window.
+ * The sums of both halves of the window are kept up to date on every tick,
+ * so checking costs O(1) whatever the size of the window.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class TerminationDetector {
+	public static final String EXTINCTION = "extinction";
+	public static final String SATURATION = "saturation";
+	public static final String STEADY_STATE = "steady_state";
+	public static final String TICK_BUDGET = "tick_budget";
+
+	private final boolean extinction;
+	private final boolean saturation;
+	private final int window;
+	private final double tolerance;
+	private final long[] grass;
+	private final long[] rabbits;
+	private long grassOlder;
+	private long grassNewer;
+	private long rabbitsOlder;
+	private long rabbitsNewer;
+	private long samples;
+
+	/**
+	 * Constructor of the class TerminationDetector
+	 * @param extinction True to stop when there are no rabbits left
+	 * @param saturation True to stop when the grid is full of rabbits
+	 * @param window Number of ticks of the steady state window, 0 to disable it
+	 * @param tolerance Largest relative drift between both halves of the window in a steady state
+	 */
+	public TerminationDetector(boolean extinction, boolean saturation, int window, double tolerance) {
+		this.extinction = extinction;
+		this.saturation = saturation;
+		// Both halves of the window have the same length
+		this.window = 2 * (window / 2);
+		this.tolerance = tolerance;
+		this.grass = new long[this.window];
+		this.rabbits = new long[this.window];
+	}
+
+	/**
+	 * Check the state of the simulation after one tick
+	 * @param space Space of the simulation
+	 * @return String Reason to stop (EXTINCTION, SATURATION or STEADY_STATE), or null to go on
+	 */
+	public String check(RabbitsGrassSimulationSpace space) {
+		if (extinction && space.getNumRabbits() == 0) {
+			return EXTINCTION;
+		}
+		if (saturation && space.isFull()) {
+			return SATURATION;
+		}
+		if (window == 0) {
+			return null;
+		}
+
+		int half = window / 2;
+		int position = (int) (samples % window);
+		int middle = (int) ((samples + half) % window);
+		long grassEnergy = space.getTotalGrassEnergy();
+		long rabbitsEnergy = space.getTotalRabbitsEnergy();
+		// The sample in the middle moves from the newer half to the older one, the oldest one leaves
+		if (samples >= half) {
+			grassNewer -= grass[middle];
+			grassOlder += grass[middle];
+			rabbitsNewer -= rabbits[middle];
+			rabbitsOlder += rabbits[middle];
+		}
+		if (samples >= window) {
+			grassOlder -= grass[position];
+			rabbitsOlder -= rabbits[position];
+		}
+		grass[position] = grassEnergy;
+		rabbits[position] = rabbitsEnergy;
+		grassNewer += grassEnergy;
+		rabbitsNewer += rabbitsEnergy;
+		samples++;
+
+		if (samples >= window && isSteady(grassOlder, grassNewer) && isSteady(rabbitsOlder, rabbitsNewer)) {
+			return STEADY_STATE;
+		}
+		return null;
+	}
+
+	private boolean isSteady(long older, long newer) {
+		return Math.abs(newer - older) <= tolerance * (older + newer) / 2;
+	}
+}
@@ -0,0 +1,114 @@
+package main;
+
+import java.io.Closeable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Class that measures how the time of the simulation splits between the
+ * phases of a tick and the other scheduled actions. Every measure of a phase
+ * is added to a histogram with one bucket per power of two of nanoseconds,
+ * so recording is a few array writes with no allocation nor output.
+ * The accumulated counts, total and maximum time and approximate percentiles
+ * of every phase are appended to a CSV file when export is called, e.g. every
+ * few hundred ticks.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class TickProfiler implements Closeable {
+	public static final int STEP = 0;
+	public static final int UPDATE_SPACE = 1;
+	public static final int GRASS = 2;
+	public static final int DISPLAY = 3;
+	public static final int ENERGY_GRAPH = 4;
+	public static final int HISTOGRAM = 5;
+	private static final String[] PHASES = { "step", "updateSpace", "grass", "display", "energyGraph", "histogram" };
+	private static final int BUCKETS = 64;
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99 };
+
+	private final long[][] histograms = new long[PHASES.length][BUCKETS];
+	private final long[] counts = new long[PHASES.length];
+	private final long[] totals = new long[PHASES.length];
+	private final long[] maxima = new long[PHASES.length];
+	private final PrintWriter out;
+
+	/**
+	 * Constructor of the class TickProfiler
+	 * @param fileName Path of the CSV file where the statistics are exported, replaced if it exists
+	 * @throws IOException If the file cannot be created
+	 */
+	public TickProfiler(String fileName) throws IOException {
+		out = new PrintWriter(new FileWriter(fileName));
+		out.println("tick,phase,count,totalNs,meanNs,maxNs,p50Ns,p90Ns,p99Ns");
+		out.flush();
+	}
+
+	/**
+	 * Add one measure to a phase
+	 * @param phase One of the phase constants of this class
+	 * @param nanos Duration of the phase in nanoseconds
+	 */
+	public void record(int phase, long nanos) {
+		// Bucket k > 0 holds the durations in [2^(k-1), 2^k), bucket 0 the null ones
+		histograms[phase][BUCKETS - Long.numberOfLeadingZeros(Math.max(0, nanos))]++;
+		counts[phase]++;
+		totals[phase] += nanos;
+		if (nanos > maxima[phase]) {
+			maxima[phase] = nanos;
+		}
+	}
+
+	/**
+	 * Add the time elapsed since start to a phase
+	 * @param phase One of the phase constants of this class
+	 * @param start Value of System.nanoTime() when the phase started
+	 * @return long Current value of System.nanoTime(), the start of the next phase
+	 */
+	public long stop(int phase, long start) {
+		long now = System.nanoTime();
+		record(phase, now - start);
+		return now;
+	}
+
+	/**
+	 * @param phase One of the phase constants of this class
+	 * @param percentile Fraction of the measures, in (0, 1]
+	 * @return long Upper bound of the bucket containing the percentile, in nanoseconds
+	 */
+	private long percentile(int phase, double percentile) {
+		long rank = (long) Math.ceil(percentile * counts[phase]);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += histograms[phase][bucket];
+			if (seen >= rank) {
+				return (bucket == 0) ? 0 : Math.min(maxima[phase], 1L << Math.min(62, bucket));
+			}
+		}
+		return maxima[phase];
+	}
+
+	/**
+	 * Append the statistics accumulated so far for every phase that has
+	 * been measured at least once
+	 * @param tick Current tick of the simulation
+	 */
+	public void export(long tick) {
+		for (int phase = 0; phase < PHASES.length; phase++) {
+			if (counts[phase] == 0) {
+				continue;
+			}
+			out.print(tick + "," + PHASES[phase] + "," + counts[phase] + "," + totals[phase] + ","
+					+ totals[phase] / counts[phase] + "," + maxima[phase]);
+			for (double percentile : PERCENTILES) {
+				out.print("," + percentile(phase, percentile));
+			}
+			out.println();
+		}
+		out.flush();
+	}
+
+	public void close() {
+		out.close();
+	}
+}
@@ -0,0 +1,220 @@
+package main;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Class that steps the rabbits of a space on several threads.
+ * <p>
+ * The torus is split in an even number of bands along each axis, at least two
+ * cells wide, and the resulting tiles are coloured like a checkerboard with
+ * 4 colours (parity of the band in x and in y). A rabbit only touches its own
+ * cell and its four neighbours, so two tiles of the same colour, which are
+ * always separated by a whole tile, never touch the same cell and can be
+ * stepped concurrently without locks.
+ * <p>
+ * Semantics of a tick: the rabbits are bucketed by the tile they stand on at
+ * the beginning of the tick, keeping the shuffled order inside every tile.
+ * Then the colours are processed one after the other (0 to 3) and the tiles
+ * of one colour in parallel. Every rabbit is stepped exactly once, in the
+ * phase of the tile it started in, even if it has moved into a tile of
+ * another colour. As in the sequential step, a move into an occupied cell
+ * fails and the rabbit eats in the cell it stands on; the cells of a
+ * neighbouring tile are seen as they were left by the previous phases.
+ * <p>
+ * The cells eaten in a tile are recorded by its task and, once all the
+ * tiles of a colour are done, their regrowth is scheduled tile by tile in a
+ * fixed order, so the regrowth schedule needs no lock either.
+ * <p>
+ * The outcome only depends on the shuffled order and the directions, not on
+ * the number of threads or their scheduling, so a fixed seed always gives
+ * the same run. It is not the same run as the sequential step with that seed,
+ * since rabbits of different tiles are visited in a different order.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class TiledStepper {
+	private static final int COLOURS = 4;
+
+	private final RabbitsGrassSimulationSpace space;
+	private final ForkJoinPool pool;
+	private final int bandsX;
+	private final int[] tileOfX;
+	private final int[] tileOfY;
+	private final int[][] tilesOfColour;
+	private final int[] tileStart;
+	private final long[] tileEaten;
+	private final int[][] tileEatenCells;
+	private final int[] tileEatenCount;
+	private int[] bucketSlots = new int[0];
+	private int[] bucketDirections = new int[0];
+
+	/**
+	 * Constructor of the class TiledStepper
+	 * @param space Space whose rabbits are stepped
+	 * @param tileSize Approximate length of the side of a tile, at least 2
+	 * @param pool Pool where the tiles are stepped
+	 */
+	public TiledStepper(RabbitsGrassSimulationSpace space, int tileSize, ForkJoinPool pool) {
+		if (!canTile(space.getCurrentRabbitSpace().getSizeX(), space.getCurrentRabbitSpace().getSizeY())) {
+			throw new IllegalArgumentException("The grid needs at least 4 cells per axis to be tiled");
+		}
+		this.space = space;
+		this.pool = pool;
+
+		int sizeX = space.getCurrentRabbitSpace().getSizeX();
+		int sizeY = space.getCurrentRabbitSpace().getSizeY();
+		bandsX = numBands(sizeX, tileSize);
+		int bandsY = numBands(sizeY, tileSize);
+		tileOfX = bandOf(sizeX, bandsX);
+		tileOfY = bandOf(sizeY, bandsY);
+
+		int numTiles = bandsX * bandsY;
+		tileStart = new int[numTiles + 1];
+		tileEaten = new long[numTiles];
+		tileEatenCells = new int[numTiles][0];
+		tileEatenCount = new int[numTiles];
+		tilesOfColour = new int[COLOURS][numTiles / COLOURS];
+		int[] filled = new int[COLOURS];
+		for (int tile = 0; tile < numTiles; tile++) {
+			int colour = colourOf(tile);
+			tilesOfColour[colour][filled[colour]++] = tile;
+		}
+	}
+
+	/**
+	 * @param sizeX Number of cells in the x axis
+	 * @param sizeY Number of cells in the y axis
+	 * @return boolean True if the grid can be split in tiles (2 bands of at least 2 cells per axis)
+	 */
+	public static boolean canTile(int sizeX, int sizeY) {
+		return sizeX >= 4 && sizeY >= 4;
+	}
+
+	private static int numBands(int size, int tileSize) {
+		// Even so the colours also alternate across the border of the torus
+		int bands = (size / Math.max(tileSize, 2)) & ~1;
+		return Math.max(bands, 2);
+	}
+
+	private static int[] bandOf(int size, int bands) {
+		int[] band = new int[size];
+		for (int b = 0; b < bands; b++) {
+			for (int i = b * size / bands; i < (b + 1) * size / bands; i++) {
+				band[i] = b;
+			}
+		}
+		return band;
+	}
+
+	private int colourOf(int tile) {
+		return (tile % bandsX & 1) | ((tile / bandsX & 1) << 1);
+	}
+
+	/**
+	 * Step every rabbit once
+	 * @param order Slots of the rabbits in the (shuffled) order they are visited
+	 * @param directions Direction of the movement of the rabbit visited in position i
+	 * @param numRabbits Number of rabbits to step
+	 */
+	public void step(int[] order, int[] directions, int numRabbits) {
+		bucket(order, directions, numRabbits);
+		for (int colour = 0; colour < COLOURS; colour++) {
+			int[] tiles = tilesOfColour[colour];
+			pool.invoke(new TileTask(tiles, 0, tiles.length));
+			if (space.hasRegrowthSchedule()) {
+				for (int tile : tiles) {
+					for (int i = 0; i < tileEatenCount[tile]; i++) {
+						space.scheduleEaten(tileEatenCells[tile][i]);
+					}
+				}
+			}
+		}
+
+		long eaten = 0;
+		for (int tile = 0; tile < tileEaten.length; tile++) {
+			eaten += tileEaten[tile];
+		}
+		space.addToTotals(eaten, numRabbits);
+	}
+
+	/**
+	 * Counting sort of the rabbits by the tile where they stand, stable so
+	 * the shuffled order is kept inside every tile
+	 */
+	private void bucket(int[] order, int[] directions, int numRabbits) {
+		if (bucketSlots.length < numRabbits) {
+			bucketSlots = new int[Math.max(numRabbits, 2 * bucketSlots.length)];
+			bucketDirections = new int[bucketSlots.length];
+		}
+		RabbitPopulation rabbits = space.getRabbits();
+
+		Arrays.fill(tileStart, 0);
+		for (int i = 0; i < numRabbits; i++) {
+			tileStart[tileOf(rabbits, order[i]) + 1]++;
+		}
+		for (int tile = 0; tile < tileEaten.length; tile++) {
+			tileStart[tile + 1] += tileStart[tile];
+		}
+		for (int i = 0; i < numRabbits; i++) {
+			int tile = tileOf(rabbits, order[i]);
+			// tileStart[tile] is used as insertion point and restored below
+			int position = tileStart[tile]++;
+			bucketSlots[position] = order[i];
+			bucketDirections[position] = directions[i];
+		}
+		for (int tile = tileEaten.length; tile > 0; tile--) {
+			tileStart[tile] = tileStart[tile - 1];
+		}
+		tileStart[0] = 0;
+	}
+
+	private int tileOf(RabbitPopulation rabbits, int slot) {
+		return tileOfY[rabbits.getY(slot)] * bandsX + tileOfX[rabbits.getX(slot)];
+	}
+
+	/**
+	 * Task that splits a range of tiles of one colour in halves until a
+	 * single tile is left, whose rabbits are then stepped
+	 */
+	private class TileTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int[] tiles;
+		private final int from;
+		private final int to;
+
+		TileTask(int[] tiles, int from, int to) {
+			this.tiles = tiles;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from == 1) {
+				int tile = tiles[from];
+				boolean schedule = space.hasRegrowthSchedule();
+				long eaten = 0;
+				int count = 0;
+				for (int i = tileStart[tile]; i < tileStart[tile + 1]; i++) {
+					int energy = space.moveAndEat(bucketSlots[i], bucketDirections[i]);
+					eaten += energy;
+					if (schedule && energy > 0) {
+						// Scheduled in tile order once the whole colour is done
+						if (count == tileEatenCells[tile].length) {
+							tileEatenCells[tile] = Arrays.copyOf(tileEatenCells[tile], Math.max(16, 2 * count));
+						}
+						tileEatenCells[tile][count++] = space.cellOf(bucketSlots[i]);
+					}
+				}
+				tileEaten[tile] = eaten;
+				tileEatenCount[tile] = count;
+			} else {
+				int middle = (from + to) >>> 1;
+				invokeAll(new TileTask(tiles, from, middle), new TileTask(tiles, middle, to));
+			}
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receiver of the population and energy statistics produced by a headless
+ * run of the rabbits grass simulation, once per tick. The sink is closed
+ * once the run is over, which stores whatever it still buffers.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public interface TimeSeriesSink extends Closeable {
+
+	/**
+	 * Append the statistics of one tick
+	 * @param tick Number of ticks performed
+	 * @param rabbits Number of living rabbits
+	 * @param grassEnergy Total energy stored in form of grass
+	 * @param rabbitsEnergy Total energy of the living rabbits
+	 * @throws IOException If the statistics cannot be stored
+	 */
+	void record(long tick, int rabbits, long grassEnergy, long rabbitsEnergy) throws IOException;
+}
@@ -0,0 +1,71 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Class that writes the population and energy time series of a headless run.
+ * Files ending in ".csv" are written as text with one line per tick. Any
+ * other name produces a compact binary file: a header with the magic number,
+ * the version and the number of columns followed by one record per tick of
+ * a long tick, an int number of rabbits and long grass and rabbits energies,
+ * in big-endian order.
+ * @author Oriol Barbany & Natalie Bolon
+ */
+
+public class TimeSeriesWriter implements TimeSeriesSink {
+	public static final int MAGIC = 0x52475453; // "RGTS"
+	public static final int VERSION = 2;
+	public static final int COLUMNS = 4;
+
+	private BufferedWriter csv;
+	private DataOutputStream binary;
+
+	/**
+	 * Constructor of the class TimeSeriesWriter
+	 * @param fileName Path of the output file, the extension selects the format
+	 * @throws IOException If the file cannot be created
+	 */
+	public TimeSeriesWriter(String fileName) throws IOException {
+		if (fileName.endsWith(".csv")) {
+			csv = new BufferedWriter(new FileWriter(fileName), 1 << 16);
+			csv.write("tick,rabbits,grass_energy,rabbits_energy");
+			csv.newLine();
+		} else {
+			binary = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+			binary.writeInt(MAGIC);
+			binary.writeInt(VERSION);
+			binary.writeInt(COLUMNS);
+		}
+	}
+
+	public void record(long tick, int rabbits, long grassEnergy, long rabbitsEnergy) throws IOException {
+		if (csv != null) {
+			csv.write(Long.toString(tick));
+			csv.write(',');
+			csv.write(Integer.toString(rabbits));
+			csv.write(',');
+			csv.write(Long.toString(grassEnergy));
+			csv.write(',');
+			csv.write(Long.toString(rabbitsEnergy));
+			csv.newLine();
+		} else {
+			binary.writeLong(tick);
+			binary.writeInt(rabbits);
+			binary.writeLong(grassEnergy);
+			binary.writeLong(rabbitsEnergy);
+		}
+	}
+
+	public void close() throws IOException {
+		if (csv != null) {
+			csv.close();
+		} else {
+			binary.close();
+		}
+	}
+}
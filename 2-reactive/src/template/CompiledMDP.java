@@ -0,0 +1,297 @@
+package template;
+
+import java.util.Arrays;
+import java.util.List;
+
+import logist.simulation.Vehicle;
+import logist.task.TaskDistribution;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * The MDP of the reactive agent compiled once into flat arrays, so the
+ * solvers never go through the Topology, TaskDistribution and Vehicle APIs
+ * while iterating. Only the feasible (state, action) pairs are stored, in
+ * compressed sparse rows (CSR): the actions of city_a are the entries
+ * [start[city_a], start[city_a + 1]) of the tables, sorted by destination.
+ * - refuse: the agent refuses a task and moves to a neighbor city_b, earning
+ *   refuse_reward (minus the cost of the trip). It leads to each neighbor
+ *   with probability refuse_prob[city_a] = P_nopacket[city_a] / neighbors.
+ * - accept: the agent carries a task from city_a to city_b, earning
+ *   accept_reward (reward of the task minus the cost of the trip) with
+ *   probability accept_prob. Tasks that are too heavy for the vehicle or
+ *   that never appear are left out.
+ * Memory and the time of a backup grow with the number of routes plus
+ * feasible tasks rather than with the square of the number of cities.
+ */
+public class CompiledMDP {
+	private final int n;
+	private final double[] P_nopacket;
+	private final double[] refuse_prob;
+	private final int[] refuse_start;
+	private final int[] refuse_dest;
+	private final double[] refuse_reward;
+	private final int[] accept_start;
+	private final int[] accept_dest;
+	private final double[] accept_reward;
+	private final double[] accept_prob;
+
+	/**
+	 * Constructor from tables already in CSR form, e.g. for graphs too large to build a Topology
+	 * @param P_nopacket (double[]): Probability of not having any task at each city
+	 * @param refuse_start (int[]): First refuse entry of each city, and the number of entries at the end
+	 * @param refuse_dest (int[]): Neighbor city of each refuse entry, ascending in each row
+	 * @param refuse_reward (double[]): Reward of each refuse entry
+	 * @param accept_start (int[]): First accept entry of each city, and the number of entries at the end
+	 * @param accept_dest (int[]): Destination city of each accept entry, ascending in each row
+	 * @param accept_reward (double[]): Reward of each accept entry
+	 * @param accept_prob (double[]): Probability of the task of each accept entry
+	 */
+	public CompiledMDP(double[] P_nopacket, int[] refuse_start, int[] refuse_dest, double[] refuse_reward,
+			int[] accept_start, int[] accept_dest, double[] accept_reward, double[] accept_prob) {
+		this.n = P_nopacket.length;
+		this.P_nopacket = P_nopacket;
+		this.refuse_start = refuse_start;
+		this.refuse_dest = refuse_dest;
+		this.refuse_reward = refuse_reward;
+		this.accept_start = accept_start;
+		this.accept_dest = accept_dest;
+		this.accept_reward = accept_reward;
+		this.accept_prob = accept_prob;
+		this.refuse_prob = new double[n];
+		for (int a = 0; a < n; a++) {
+			refuse_prob[a] = P_nopacket[a] / (refuse_start[a + 1] - refuse_start[a]);
+		}
+	}
+
+	/**
+	 * @param topology (Topology): Describes the graph
+	 * @param td (TaskDistribution): Gives statistics about probabilities of task and expected weights and rewards
+	 * @param v (Vehicle): Gives information such as cost per kilometer and capacity
+	 * @return CompiledMDP: Tables of the MDP of the vehicle on the topology
+	 */
+	public static CompiledMDP compile(Topology topology, TaskDistribution td, Vehicle v) {
+		int n = topology.size();
+		List<City> cities = topology.cities();
+		double[] P_nopacket = new double[n];
+
+		// Refusing a packet can only lead to neighbor states
+		int[] refuse_start = new int[n + 1];
+		for (City city_a : topology) {
+			refuse_start[city_a.id + 1] = refuse_start[city_a.id] + city_a.neighbors().size();
+		}
+		int[] refuse_dest = new int[refuse_start[n]];
+		double[] refuse_reward = new double[refuse_start[n]];
+		for (City city_a : topology) {
+			int k = refuse_start[city_a.id];
+			for (City city_b : city_a.neighbors()) {
+				refuse_dest[k++] = city_b.id;
+			}
+			Arrays.sort(refuse_dest, refuse_start[city_a.id], k);
+			for (k = refuse_start[city_a.id]; k < refuse_start[city_a.id + 1]; k++) {
+				refuse_reward[k] = - city_a.distanceTo(cities.get(refuse_dest[k])) * v.costPerKm();
+			}
+		}
+
+		// We can accept a packet leading to any other city (except current) and in the case
+		// that we can carry its (expected) weight
+		int[] accept_start = new int[n + 1];
+		int[] accept_dest = new int[Math.max(16, refuse_start[n])];
+		double[] accept_reward = new double[accept_dest.length];
+		double[] accept_prob = new double[accept_dest.length];
+		int k = 0;
+		for (City city_a : topology) {
+			// Probability of no having tasks at city_a (so T(s,a,s') sums up to one for each s)
+			double p_nopacket = 0;
+			for (City city_b : topology) {
+				double p = td.probability(city_a, city_b);
+				p_nopacket += p;
+				if (p > 0 && td.weight(city_a, city_b) <= v.capacity() && city_a.id != city_b.id) {
+					if (k == accept_dest.length) {
+						accept_dest = Arrays.copyOf(accept_dest, 2 * k);
+						accept_reward = Arrays.copyOf(accept_reward, 2 * k);
+						accept_prob = Arrays.copyOf(accept_prob, 2 * k);
+					}
+					accept_dest[k] = city_b.id;
+					accept_reward[k] = td.reward(city_a, city_b) - city_a.distanceTo(city_b) * v.costPerKm();
+					accept_prob[k] = p;
+					k++;
+				}
+			}
+			P_nopacket[city_a.id] = 1 - p_nopacket;
+			accept_start[city_a.id + 1] = k;
+		}
+
+		return new CompiledMDP(P_nopacket, refuse_start, refuse_dest, refuse_reward, accept_start,
+				Arrays.copyOf(accept_dest, k), Arrays.copyOf(accept_reward, k), Arrays.copyOf(accept_prob, k));
+	}
+
+	/**
+	 * Recompute all the Q-values of a source city. V_src and V_dst can be the
+	 * same array (in-place update), since the Q-values of city_a never depend
+	 * on V[city_a]: the agent can neither refuse to city_a nor accept a task to it.
+	 * @param a (int): ID of the source city
+	 * @param discount (double): Discount factor of future rewards
+	 * @param V_src (double[]): V of the destination cities
+	 * @param V_dst (double[]): Where the best of V_src[a] and the new Q-values of city a is written
+	 * @param Q (QTable): Q-values, the ones of city a are updated in place
+	 * @return double: Largest change of one of the Q-values
+	 */
+	public double backup(int a, double discount, double[] V_src, double[] V_dst, QTable Q) {
+		double[] Q_refuse = Q.getRefuseValues();
+		double[] Q_accept = Q.getAcceptValues();
+		double refuse_coef = discount * refuse_prob[a];
+		double best = V_src[a];
+		double dif = 0;
+		for (int k = refuse_start[a]; k < refuse_start[a + 1]; k++) {
+			double Qval = refuse_reward[k] + refuse_coef * V_src[refuse_dest[k]];
+			dif = Math.max(dif, Math.abs(Qval - Q_refuse[k]));
+			Q_refuse[k] = Qval;
+			best = Math.max(best, Qval);
+		}
+		for (int k = accept_start[a]; k < accept_start[a + 1]; k++) {
+			double Qval = accept_reward[k] + discount * accept_prob[k] * V_src[accept_dest[k]];
+			dif = Math.max(dif, Math.abs(Qval - Q_accept[k]));
+			Q_accept[k] = Qval;
+			best = Math.max(best, Qval);
+		}
+		V_dst[a] = best;
+		return dif;
+	}
+
+	/**
+	 * @return Predecessors: For every city_b, the cities whose Q-values depend on V[city_b]
+	 */
+	public Predecessors predecessors() {
+		// Merge the refuse and the accept row of every city, both sorted by destination
+		int[] start = new int[n + 1];
+		int[] next = new int[n];
+		forEachSuccessor(null, null, next);
+		for (int b = 0; b < n; b++) {
+			start[b + 1] = start[b] + next[b];
+		}
+		int[] city = new int[start[n]];
+		double[] coef = new double[start[n]];
+		System.arraycopy(start, 0, next, 0, n);
+		forEachSuccessor(city, coef, next);
+		return new Predecessors(start, city, coef);
+	}
+
+	/**
+	 * Walk the successors of every city once: with null arrays, count the
+	 * predecessors of each city in next[city_b]; otherwise store each
+	 * predecessor at next[city_b] and advance it.
+	 */
+	private void forEachSuccessor(int[] city, double[] coef, int[] next) {
+		for (int a = 0; a < n; a++) {
+			int r = refuse_start[a];
+			int t = accept_start[a];
+			while (r < refuse_start[a + 1] || t < accept_start[a + 1]) {
+				int b;
+				double c;
+				if (t == accept_start[a + 1] || (r < refuse_start[a + 1] && refuse_dest[r] < accept_dest[t])) {
+					b = refuse_dest[r++];
+					c = refuse_prob[a];
+				} else if (r == refuse_start[a + 1] || accept_dest[t] < refuse_dest[r]) {
+					b = accept_dest[t];
+					c = accept_prob[t++];
+				} else {
+					b = refuse_dest[r++];
+					c = Math.max(refuse_prob[a], accept_prob[t++]);
+				}
+				if (city != null) {
+					city[next[b]] = a;
+					coef[next[b]] = c;
+				}
+				next[b]++;
+			}
+		}
+	}
+
+	/**
+	 * @param a (int): ID of the source city
+	 * @param b (int): ID of the neighbor city
+	 * @return int: Index of the refuse entry from a to b, negative if b is not a neighbor of a
+	 */
+	public int findRefuse(int a, int b) {
+		int k = Arrays.binarySearch(refuse_dest, refuse_start[a], refuse_start[a + 1], b);
+		return (k >= 0) ? k : -1;
+	}
+
+	/**
+	 * @param a (int): ID of the source city
+	 * @param b (int): ID of the destination city
+	 * @return int: Index of the accept entry from a to b, negative if the task is not feasible
+	 */
+	public int findAccept(int a, int b) {
+		int k = Arrays.binarySearch(accept_dest, accept_start[a], accept_start[a + 1], b);
+		return (k >= 0) ? k : -1;
+	}
+
+	/**
+	 * @return int: Number of cities
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @param a (int): ID of the city
+	 * @return int: Number of Q-values of the city, i.e. of refuse and accept actions
+	 */
+	public int getNumActions(int a) {
+		return refuse_start[a + 1] - refuse_start[a] + accept_start[a + 1] - accept_start[a];
+	}
+
+	/**
+	 * @return int: Number of refuse entries (twice the number of routes)
+	 */
+	public int getNumRefuse() {
+		return refuse_start[n];
+	}
+
+	/**
+	 * @return int: Number of accept entries (feasible tasks)
+	 */
+	public int getNumAccept() {
+		return accept_start[n];
+	}
+
+	/**
+	 * @return int[]: First accept entry of each city, and the number of entries at the end
+	 */
+	public int[] getAcceptStart() {
+		return accept_start;
+	}
+
+	/**
+	 * @return int[]: Destination city of each accept entry, ascending in each row
+	 */
+	public int[] getAcceptDest() {
+		return accept_dest;
+	}
+
+	/**
+	 * @return double[]: Probability of not having any task at each city
+	 */
+	public double[] getNoTaskProbability() {
+		return P_nopacket;
+	}
+
+	/**
+	 * Predecessors of every city in CSR form: the cities whose Q-values
+	 * depend on V[city_b] are city[start[city_b] .. start[city_b + 1]), and
+	 * coef is the largest coefficient of V[city_b] in their Q-values.
+	 */
+	public static class Predecessors {
+		public final int[] start;
+		public final int[] city;
+		public final double[] coef;
+
+		Predecessors(int[] start, int[] city, double[] coef) {
+			this.start = start;
+			this.city = city;
+			this.coef = coef;
+		}
+	}
+}
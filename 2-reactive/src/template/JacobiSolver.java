@@ -0,0 +1,111 @@
+package template;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Value iteration that updates all the cities at once from the V of the
+ * previous iteration (Jacobi), so the source cities can be split across a
+ * fork-join pool. V is double-buffered: every task reads V_old and only
+ * writes the Q-values and V_new of its own cities, so no locks are needed and
+ * the result does not depend on the number of threads. The largest change of
+ * a Q-value is reduced along the tasks, and the iterations stop when it is
+ * below epsilon, as in SweepSolver. A Jacobi iteration propagates values
+ * more slowly than a Gauss-Seidel sweep, so it needs a few more iterations
+ * and only pays off with several cores.
+ */
+public class JacobiSolver implements QSolver {
+	// Number of source cities below which a task is not split any further
+	private static final int GRAIN = 8;
+
+	private final ForkJoinPool pool;
+
+	public JacobiSolver() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool (ForkJoinPool): Pool where the source cities are processed
+	 */
+	public JacobiSolver(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public long solve(CompiledMDP mdp, double discount, double epsilon, QTable Q, double[] V) {
+		int n = mdp.size();
+		Iteration iteration = new Iteration(mdp, discount, Q);
+		double[] V_old = V.clone();
+		double[] V_new = new double[n];
+		// Every iteration computes all the Q-values
+		long num_actions = 0;
+		for (int a = 0; a < n; a++) {
+			num_actions += mdp.getNumActions(a);
+		}
+		long iterations = 0;
+		double dif;
+		do {
+			iteration.V_old = V_old;
+			iteration.V_new = V_new;
+			dif = pool.invoke(iteration.new CityRange(0, n));
+			iterations++;
+
+			double[] swap = V_old;
+			V_old = V_new;
+			V_new = swap;
+		} while (dif > epsilon);
+
+		System.arraycopy(V_old, 0, V, 0, n);
+		return iterations * num_actions;
+	}
+
+	/**
+	 * Data shared by the tasks of one iteration
+	 */
+	private static class Iteration {
+		private final CompiledMDP mdp;
+		private final double discount;
+		private final QTable Q;
+		private double[] V_old;
+		private double[] V_new;
+
+		Iteration(CompiledMDP mdp, double discount, QTable Q) {
+			this.mdp = mdp;
+			this.discount = discount;
+			this.Q = Q;
+		}
+
+		/**
+		 * Task that splits a range of source cities in halves until at most
+		 * GRAIN are left, and returns the largest change of their Q-values
+		 */
+		private class CityRange extends RecursiveTask<Double> {
+			private static final long serialVersionUID = 1L;
+
+			private final int from;
+			private final int to;
+
+			CityRange(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected Double compute() {
+				if (to - from <= GRAIN) {
+					double dif = 0;
+					for (int a = from; a < to; a++) {
+						dif = Math.max(dif, mdp.backup(a, discount, V_old, V_new, Q));
+					}
+					return dif;
+				}
+				int middle = (from + to) >>> 1;
+				CityRange left = new CityRange(from, middle);
+				CityRange right = new CityRange(middle, to);
+				left.fork();
+				double dif = right.compute();
+				return Math.max(dif, left.join());
+			}
+		}
+	}
+}
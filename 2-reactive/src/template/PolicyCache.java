@@ -0,0 +1,224 @@
+package template;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import logist.simulation.Vehicle;
+import logist.task.TaskDistribution;
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * Directory of trained policies, so an agent that is set up again with the
+ * same topology, task distribution, discount factor, solver and vehicle loads its
+ * policy instead of running the value iteration again. Each policy is a
+ * binary file named after the SHA-256 fingerprint of everything the policy
+ * depends on: the cities and routes, the probability, reward and weight of
+ * every task, the discount factor, epsilon, the solver, the capacity and the
+ * cost per km. The solvers only agree within epsilon, so each one keeps its
+ * own policy.
+ * The file holds a header (magic number, version, full fingerprint, number of
+ * cities and of pickups) followed by a PolicyTable, which is used straight
+ * from the memory-mapped file.
+ * Computing the fingerprint goes once over every pair of cities, like
+ * compiling the MDP does, so a hit saves the value iteration but not that pass.
+ * The file is written next to its destination and then renamed, so a crash
+ * while saving never leaves a broken policy behind.
+ */
+public class PolicyCache {
+	private static final int MAGIC = 0x52504f4c; // "RPOL"
+	private static final int VERSION = 2;
+	private static final int FINGERPRINT_BYTES = 32;
+	private static final int HEADER_BYTES = 4 + 4 + FINGERPRINT_BYTES + 4 + 4;
+
+	private final Path directory;
+
+	/**
+	 * Constructor of the class PolicyCache
+	 * @param directory (String): Directory of the policies, created on the first store
+	 */
+	public PolicyCache(String directory) {
+		this.directory = Paths.get(directory);
+	}
+
+	/**
+	 * @param topology (Topology): Describes the graph
+	 * @param td (TaskDistribution): Gives statistics about probabilities of task and expected weights and rewards
+	 * @param v (Vehicle): Gives information such as cost per kilometer and capacity
+	 * @param discount (double): Discount factor of future rewards
+	 * @param epsilon (double): Largest change of a Q-value allowed at convergence
+	 * @param solver (String): Name of the solver of the Q-values, as in the "solver" property of the agent
+	 * @return byte[]: SHA-256 fingerprint of all the inputs of the value iteration
+	 */
+	public static byte[] fingerprint(Topology topology, TaskDistribution td, Vehicle v, double discount,
+			double epsilon, String solver) {
+		Digest digest = new Digest();
+		digest.putInt(VERSION);
+		digest.putInt(topology.size());
+		for (City city_a : topology) {
+			digest.putString(city_a.name);
+			digest.putInt(city_a.xPos);
+			digest.putInt(city_a.yPos);
+			// The order of the neighbors breaks ties between moves
+			digest.putInt(city_a.neighbors().size());
+			for (City city_b : city_a.neighbors()) {
+				digest.putInt(city_b.id);
+				digest.putLong(city_a.distanceUnitsTo(city_b));
+			}
+		}
+		for (City city_a : topology) {
+			for (City city_b : topology) {
+				digest.putDouble(td.probability(city_a, city_b));
+				digest.putInt(td.reward(city_a, city_b));
+				digest.putInt(td.weight(city_a, city_b));
+			}
+		}
+		digest.putDouble(discount);
+		digest.putDouble(epsilon);
+		digest.putString(solver);
+		digest.putInt(v.capacity());
+		digest.putInt(v.costPerKm());
+		return digest.finish();
+	}
+
+	/**
+	 * @param fingerprint (byte[]): Fingerprint of the policy
+	 * @return Path: File of the policy
+	 */
+	public Path file(byte[] fingerprint) {
+		StringBuilder name = new StringBuilder("policy-");
+		// Half of the fingerprint names the file, the whole one is checked on load
+		for (int i = 0; i < FINGERPRINT_BYTES / 2; i++) {
+			name.append(String.format("%02x", fingerprint[i]));
+		}
+		return directory.resolve(name.append(".bin").toString());
+	}
+
+	/**
+	 * @param fingerprint (byte[]): Fingerprint of the policy
+	 * @return PolicyTable: Policy mapped from its file, or null if it is not in the cache
+	 * @throws IOException If the file exists but cannot be read or is not a policy of this version
+	 */
+	public PolicyTable load(byte[] fingerprint) throws IOException {
+		Path file = file(fingerprint);
+		if (!Files.exists(file)) {
+			return null;
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+				throw new IOException(file + " is not a policy of this version of the agent");
+			}
+			byte[] stored = new byte[FINGERPRINT_BYTES];
+			buffer.get(stored);
+			if (!Arrays.equals(stored, fingerprint)) {
+				return null;
+			}
+			int n = buffer.getInt();
+			int num_pickups = buffer.getInt();
+			if (buffer.remaining() != PolicyTable.bytes(n, num_pickups)) {
+				throw new IOException(file + " is truncated");
+			}
+			return new PolicyTable(n, num_pickups, buffer);
+		} finally {
+			// The mapping stays valid after closing the channel
+			channel.close();
+		}
+	}
+
+	/**
+	 * Save a policy, replacing the one with the same fingerprint if any
+	 * @param fingerprint (byte[]): Fingerprint of the policy
+	 * @param table (PolicyTable): Policy to save
+	 * @throws IOException If the file cannot be written
+	 */
+	public void store(byte[] fingerprint, PolicyTable table) throws IOException {
+		Files.createDirectories(directory);
+		Path target = file(fingerprint);
+		Path tmp = Paths.get(target + ".tmp");
+		ByteBuffer data = table.getBuffer();
+		FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + data.remaining());
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.put(fingerprint);
+			buffer.putInt(table.size());
+			buffer.putInt(table.getNumPickups());
+			buffer.put(data);
+			buffer.force();
+		} finally {
+			channel.close();
+		}
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * SHA-256 digest fed with primitive values through a buffer, which is
+	 * hashed in bulk every time it is full
+	 */
+	private static class Digest {
+		private final MessageDigest digest;
+		private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+		Digest() {
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				// Every Java platform is required to support SHA-256
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private void reserve(int bytes) {
+			if (buffer.remaining() < bytes) {
+				buffer.flip();
+				digest.update(buffer);
+				buffer.clear();
+			}
+		}
+
+		void putInt(int value) {
+			reserve(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) {
+			reserve(8);
+			buffer.putLong(value);
+		}
+
+		void putDouble(double value) {
+			reserve(8);
+			buffer.putDouble(value);
+		}
+
+		void putString(String value) {
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			putInt(bytes.length);
+			for (byte b : bytes) {
+				reserve(1);
+				buffer.put(b);
+			}
+		}
+
+		byte[] finish() {
+			buffer.flip();
+			digest.update(buffer);
+			return digest.digest();
+		}
+	}
+}
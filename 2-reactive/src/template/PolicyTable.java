@@ -0,0 +1,183 @@
+package template;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+
+import logist.topology.Topology;
+import logist.topology.Topology.City;
+
+/**
+ * Greedy policy of the reactive agent once the Q-values have converged:
+ * V and the best refuse Q-value of each city, the neighbor where it is
+ * attained, and the tasks worth picking up from each city, which are
+ * pickup_dest[pickup_start[city_a] .. pickup_start[city_a + 1]) in ascending order.
+ * Everything is laid out in a single buffer, in that order, so the same
+ * table is used right after training or mapped from the policy cache
+ * without copying it (see PolicyCache).
+ */
+public class PolicyTable {
+	private final int n;
+	private final ByteBuffer buffer;
+	private final DoubleBuffer V;
+	private final DoubleBuffer best_value;
+	private final IntBuffer best_neigh;
+	private final IntBuffer pickup_start;
+	private final IntBuffer pickup_dest;
+
+	/**
+	 * Constructor of the class PolicyTable
+	 * @param n (int): Number of cities
+	 * @param num_pickups (int): Number of (source, destination) pairs where tasks are picked up
+	 * @param buffer (ByteBuffer): Buffer of bytes(n, num_pickups) bytes, from its position on, holding the table
+	 */
+	public PolicyTable(int n, int num_pickups, ByteBuffer buffer) {
+		this.n = n;
+		this.buffer = buffer.slice();
+		this.buffer.limit(bytes(n, num_pickups));
+		this.V = slice(0, 8 * n).asDoubleBuffer();
+		this.best_value = slice(8 * n, 8 * n).asDoubleBuffer();
+		this.best_neigh = slice(16 * n, 4 * n).asIntBuffer();
+		this.pickup_start = slice(20 * n, 4 * (n + 1)).asIntBuffer();
+		this.pickup_dest = slice(24 * n + 4, 4 * num_pickups).asIntBuffer();
+	}
+
+	/**
+	 * Compute the greedy policy from the converged Q-values
+	 * @param topology (Topology): Describes the graph
+	 * @param mdp (CompiledMDP): Tables of the MDP that was solved
+	 * @param Q (QTable): Converged Q-values
+	 * @param V (double[]): Converged V
+	 * @return PolicyTable: Policy on the heap
+	 */
+	public static PolicyTable fromQ(Topology topology, CompiledMDP mdp, QTable Q, double[] V) {
+		int n = topology.size();
+		double[] best_value = new double[n];
+		int[] best_neigh = new int[n];
+		int[] pickup_start = new int[n + 1];
+		int[] pickup_dest = new int[mdp.getNumAccept()];
+		int[] accept_start = mdp.getAcceptStart();
+		int[] accept_dest = mdp.getAcceptDest();
+		double[] Q_accept = Q.getAcceptValues();
+		int num_pickups = 0;
+
+		for (City city_a : topology) {
+			// Best action in case delivery is not possible or not optimal
+			double max_qval = -9999999; // If 0 can lead to vehicle choosing the current city if q values are negative
+			City max_neigh = city_a;
+
+			for (City city_b : city_a.neighbors()) {
+				if (max_qval < Q.getRefuse(city_a.id, city_b.id)) {
+					max_qval = Q.getRefuse(city_a.id, city_b.id);
+					max_neigh = city_b;
+				}
+			}
+			best_value[city_a.id] = max_qval;
+			best_neigh[city_a.id] = max_neigh.id;
+
+			// Delivery is optimal when it beats the best move
+			for (int k = accept_start[city_a.id]; k < accept_start[city_a.id + 1]; k++) {
+				if (max_qval < Q_accept[k]) {
+					pickup_dest[num_pickups++] = accept_dest[k];
+				}
+			}
+			pickup_start[city_a.id + 1] = num_pickups;
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(bytes(n, num_pickups));
+		buffer.asDoubleBuffer().put(V, 0, n);
+		buffer.position(8 * n);
+		buffer.asDoubleBuffer().put(best_value);
+		buffer.position(16 * n);
+		buffer.asIntBuffer().put(best_neigh);
+		buffer.position(20 * n);
+		buffer.asIntBuffer().put(pickup_start);
+		buffer.position(24 * n + 4);
+		buffer.asIntBuffer().put(pickup_dest, 0, num_pickups);
+		buffer.position(0);
+		return new PolicyTable(n, num_pickups, buffer);
+	}
+
+	/**
+	 * @param n (int): Number of cities
+	 * @param num_pickups (int): Number of (source, destination) pairs where tasks are picked up
+	 * @return int: Size of a table in bytes
+	 */
+	public static int bytes(int n, int num_pickups) {
+		return 8 * n + 8 * n + 4 * n + 4 * (n + 1) + 4 * num_pickups;
+	}
+
+	private ByteBuffer slice(int offset, int length) {
+		ByteBuffer view = buffer.duplicate();
+		view.position(offset);
+		view.limit(offset + length);
+		return view.slice();
+	}
+
+	/**
+	 * @param a (int): ID of the source city
+	 * @param b (int): ID of the destination city
+	 * @return boolean: True if a task from a to b is worth picking up
+	 */
+	public boolean shouldPickup(int a, int b) {
+		int low = pickup_start.get(a);
+		int high = pickup_start.get(a + 1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int dest = pickup_dest.get(middle);
+			if (dest < b) {
+				low = middle + 1;
+			} else if (dest > b) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param a (int): ID of the city
+	 * @return int: ID of the neighbor to move to when no task is picked up
+	 */
+	public int getBestNeighbor(int a) {
+		return best_neigh.get(a);
+	}
+
+	/**
+	 * @param a (int): ID of the city
+	 * @return double: Q-value of moving to the best neighbor
+	 */
+	public double getBestValue(int a) {
+		return best_value.get(a);
+	}
+
+	/**
+	 * @param a (int): ID of the city
+	 * @return double: Best Q-value of the city
+	 */
+	public double getValue(int a) {
+		return V.get(a);
+	}
+
+	/**
+	 * @return int: Number of cities
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @return int: Number of (source, destination) pairs where tasks are picked up
+	 */
+	public int getNumPickups() {
+		return pickup_dest.capacity();
+	}
+
+	/**
+	 * @return ByteBuffer: Whole table, from position 0
+	 */
+	ByteBuffer getBuffer() {
+		return buffer.duplicate();
+	}
+}
@@ -0,0 +1,138 @@
+package template;
+
+import java.util.Arrays;
+
+/**
+ * Value iteration by prioritized sweeping: instead of sweeping every city,
+ * the city with the largest pending residual is backed up next (all its
+ * Q-values are recomputed). The Q-values of city_a only depend on V of the
+ * cities it can reach, so when V[city_b] grows by dV, the Q-values of every
+ * predecessor city_a can grow by at most discount * coef * dV, where coef is
+ * P_nopacket[city_a] / neighbors (refusing) or the probability of a task to
+ * city_b (accepting). These bounds are added to the residual of city_a in an
+ * indexed max-heap, and the solver stops when no residual exceeds epsilon,
+ * so no Q-value can change by more than epsilon, as in SweepSolver.
+ * Cities whose successors did not change are never backed up again.
+ */
+public class PrioritizedSweepingSolver implements QSolver {
+
+	@Override
+	public long solve(CompiledMDP mdp, double discount, double epsilon, QTable Q, double[] V) {
+		int n = mdp.size();
+
+		// Predecessors of every city and the largest coefficient of V[city_b] in their Q-values
+		CompiledMDP.Predecessors pred = mdp.predecessors();
+
+		// Every city is backed up at least once
+		ResidualHeap heap = new ResidualHeap(n);
+		for (int a = 0; a < n; a++) {
+			heap.add(a, Double.POSITIVE_INFINITY);
+		}
+
+		long backups = 0;
+		while (!heap.isEmpty() && heap.maxResidual() > epsilon) {
+			int a = heap.poll();
+			double old_V = V[a];
+			mdp.backup(a, discount, V, V, Q);
+			backups += mdp.getNumActions(a);
+
+			double dV = V[a] - old_V;
+			if (dV > 0) {
+				for (int k = pred.start[a]; k < pred.start[a + 1]; k++) {
+					heap.add(pred.city[k], discount * pred.coef[k] * dV);
+				}
+			}
+		}
+		return backups;
+	}
+
+	/**
+	 * Indexed binary max-heap of the pending residual of every city. The
+	 * position of every city in the heap is kept, so the residual of a city
+	 * already in the heap is increased in O(log n).
+	 */
+	private static class ResidualHeap {
+		private final int[] heap;
+		private final int[] position;
+		private final double[] residual;
+		private int size;
+
+		ResidualHeap(int n) {
+			heap = new int[n];
+			position = new int[n];
+			residual = new double[n];
+			Arrays.fill(position, -1);
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		double maxResidual() {
+			return residual[heap[0]];
+		}
+
+		/**
+		 * Add to the residual of a city, inserting it if it is not in the heap
+		 * @param city (int): ID of the city
+		 * @param delta (double): Non-negative increase of its residual
+		 */
+		void add(int city, double delta) {
+			if (position[city] < 0) {
+				residual[city] = 0;
+				position[city] = size;
+				heap[size++] = city;
+			}
+			residual[city] += delta;
+			siftUp(position[city]);
+		}
+
+		/**
+		 * @return int: ID of the city with the largest residual, removed from the heap
+		 */
+		int poll() {
+			int top = heap[0];
+			position[top] = -1;
+			size--;
+			if (size > 0) {
+				heap[0] = heap[size];
+				position[heap[0]] = 0;
+				siftDown(0);
+			}
+			return top;
+		}
+
+		private void siftUp(int i) {
+			int city = heap[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (residual[heap[parent]] >= residual[city]) {
+					break;
+				}
+				heap[i] = heap[parent];
+				position[heap[i]] = i;
+				i = parent;
+			}
+			heap[i] = city;
+			position[city] = i;
+		}
+
+		private void siftDown(int i) {
+			int city = heap[i];
+			while (2 * i + 1 < size) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && residual[heap[child + 1]] > residual[heap[child]]) {
+					child++;
+				}
+				if (residual[heap[child]] <= residual[city]) {
+					break;
+				}
+				heap[i] = heap[child];
+				position[heap[i]] = i;
+				i = child;
+			}
+			heap[i] = city;
+			position[city] = i;
+		}
+	}
+}
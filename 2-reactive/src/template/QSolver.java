@@ -0,0 +1,23 @@
+package template;
+
+/**
+ * Algorithm that computes the Q-values of the reactive agent until they converge.
+ * The states are the cities and, from city_a, the agent can refuse a task and
+ * move to a neighbor city_b or accept a task to city_b if it can carry it
+ * (see CompiledMDP). V[city_a] is the best Q-value found so far for city_a,
+ * so it never decreases.
+ * The solver is chosen with the "solver" property of the agent (see ReactiveTemplate).
+ */
+public interface QSolver {
+
+	/**
+	 * Update Q and V until no Q-value can change by more than epsilon
+	 * @param mdp (CompiledMDP): Tables of rewards, probabilities and feasible actions
+	 * @param discount (double): Discount factor of future rewards
+	 * @param epsilon (double): Largest change of a Q-value allowed at convergence
+	 * @param Q (QTable): Q-values of the feasible actions, updated in place
+	 * @param V (double[]): Best Q-value of each city, updated in place
+	 * @return long: Number of Q-values computed (backups)
+	 */
+	long solve(CompiledMDP mdp, double discount, double epsilon, QTable Q, double[] V);
+}
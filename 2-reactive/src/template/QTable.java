@@ -0,0 +1,56 @@
+package template;
+
+/**
+ * Q-values of the feasible (state, action) pairs of a CompiledMDP, stored
+ * in the same order as its refuse and accept entries, so a solver updates
+ * them by index and the agent looks them up by binary search in a row.
+ */
+public class QTable {
+	private final CompiledMDP mdp;
+	private final double[] refuse;
+	private final double[] accept;
+
+	/**
+	 * Constructor of the class QTable, all the Q-values start at 0
+	 * @param mdp (CompiledMDP): MDP whose Q-values are stored
+	 */
+	public QTable(CompiledMDP mdp) {
+		this.mdp = mdp;
+		this.refuse = new double[mdp.getNumRefuse()];
+		this.accept = new double[mdp.getNumAccept()];
+	}
+
+	/**
+	 * @param a (int): ID of the source city
+	 * @param b (int): ID of the neighbor city
+	 * @return double: Q-value of refusing a task and moving from a to b, -infinity if b is not a neighbor
+	 */
+	public double getRefuse(int a, int b) {
+		int k = mdp.findRefuse(a, b);
+		return (k >= 0) ? refuse[k] : Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * @param a (int): ID of the source city
+	 * @param b (int): ID of the destination city
+	 * @return double: Q-value of accepting a task from a to b, -infinity if it is not feasible
+	 */
+	public double getAccept(int a, int b) {
+		int k = mdp.findAccept(a, b);
+		return (k >= 0) ? accept[k] : Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * @return double[]: Q-values of the refuse entries of the MDP
+	 */
+	public double[] getRefuseValues() {
+		return refuse;
+	}
+
+	/**
+	 * @return double[]: Q-values of the accept entries of the MDP
+	 */
+	public double[] getAcceptValues() {
+		return accept;
+	}
+}
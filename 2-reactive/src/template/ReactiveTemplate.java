@@ -1,5 +1,6 @@
 package template;
 
+import java.io.IOException;
 import java.util.Random;
 
 import logist.simulation.Vehicle;
@@ -24,24 +25,24 @@ public class ReactiveTemplate implements ReactiveBehavior {
 	private Agent myAgent;
 	private int policy;
 	
-	private double[][][] Q;
-	private double[] V;
-	private double[] P_nopacket;
-	
-	private double[] Best_value;
+	private PolicyTable table;
 	private City[] Best_neigh;
+	
+	private QSolver solver;
 
 	/**
 	 * Setup function is called internally by the main of the logist package
 	 * This function calls the Q-learning algorithm in case we choose this policy, and prints
-	 * its training time
+	 * its training time. Trained policies are kept in the directory given by the "policy-cache"
+	 * property (policy-cache by default, empty to disable it) and loaded instead of trained again
+	 * when the topology, the task distribution, the discount factor, the solver and the vehicle are the same
 	 * 
 	 * @param topology (Topology): Describes the graph
 	 * @param td (TaskDistribution): Gives statistics about probabilities of task and expected weights and rewards
 	 * @param agent (Agent): Gives information about agent such as its policy, which
 	 * can either be [0: Random, -1: Dummy, (Anything else): Q-Learning], the discount factor, which
 	 * will be the actual discount factor for Q-Learning and the probability of picking a task for random policy,
-	 * and vehicle.
+	 * the solver of the Q-values [sweep (default), prioritized, jacobi], and vehicle.
 	 */
 	@Override
 	public void setup(Topology topology, TaskDistribution td, Agent agent) {
@@ -53,6 +54,15 @@ public class ReactiveTemplate implements ReactiveBehavior {
 		// If the property is not present it defaults to Q-Learning
 		Integer policy_v = agent.readProperty("policy", Integer.class, 1);
 		policy = policy_v;
+		
+		// Reads the algorithm that computes the Q-values from the agents.xml file.
+		// If the property is not present it defaults to sweeping all the pairs of cities
+		String solver_name = agent.readProperty("solver", String.class, "sweep");
+		solver = createSolver(solver_name);
+		
+		// Reads the directory of the trained policies from the agents.xml file.
+		// If the property is not present it defaults to policy-cache
+		String cache_dir = agent.readProperty("policy-cache", String.class, "policy-cache");
 
 		// Create Random number generator
 		this.random = new Random();
@@ -66,13 +76,49 @@ public class ReactiveTemplate implements ReactiveBehavior {
 		if (policy != 0 && policy != -1) {
 			long start = System.nanoTime();
 			
-			// Run Offline Q-Learning
 			// Given that there's only one vehicle, get first (and unique) element of list
-			reinforce(topology, td, agent.vehicles().get(0));
+			Vehicle vehicle = agent.vehicles().get(0);
+			
+			// Load the policy if it was already trained
+			PolicyCache cache = cache_dir.isEmpty() ? null : new PolicyCache(cache_dir);
+			byte[] fingerprint = null;
+			table = null;
+			if (cache != null) {
+				fingerprint = PolicyCache.fingerprint(topology, td, vehicle, discount, EPSILON, solver_name);
+				try {
+					table = cache.load(fingerprint);
+				} catch (IOException e) {
+					System.out.println("Cannot load the policy, training it again: " + e.getMessage());
+				}
+			}
+			
+			boolean loaded = table != null;
+			if (loaded) {
+				System.out.println("Policy loaded from " + cache.file(fingerprint));
+			} else {
+				// Run Offline Q-Learning
+				reinforce(topology, td, vehicle);
+				if (cache != null) {
+					try {
+						cache.store(fingerprint, table);
+					} catch (IOException e) {
+						System.out.println("Cannot save the policy: " + e.getMessage());
+					}
+				}
+			}
+			
+			Best_neigh = new City[topology.size()];
+			for (City city_a : topology) {
+				Best_neigh[city_a.id] = topology.cities().get(table.getBestNeighbor(city_a.id));
+			}
 			
 			long end = System.nanoTime();
 			//finding the time difference and converting it into seconds
-			System.out.println("Elapsed time in training " + (end - start) * 1e-9 + "s");	
+			if (loaded) {
+				System.out.println("Elapsed time in loading the policy " + (end - start) * 1e-9 + "s");
+			} else {
+				System.out.println("Elapsed time in training " + (end - start) * 1e-9 + "s");
+			}
 		}
 		System.out.println("\n \n");
 		
@@ -80,86 +126,46 @@ public class ReactiveTemplate implements ReactiveBehavior {
 	
 	/**
 	 * Q-Learning function
-	 * When acting, we will use the vectors Best_value for the best Q-value for a given city with a Reject action
-	 * associated, the Best_neigh for the city where the previous maximum is attained, and the Q tensor
-	 * having all the Q-values for the case a pickup is possible. It can be accessed as
-	 * Q[source_city][destination_city][0/1], where the first 2 indices are the IDs of the cities
-	 * and the last one is 0 for rejecting a task and 1 for accepting it
+	 * Computes the Q table, which only stores the feasible actions and can be accessed as
+	 * Q.getRefuse(source_city, destination_city) and Q.getAccept(source_city, destination_city),
+	 * where the arguments are the IDs of the cities. When acting, we will use the policy table
+	 * derived from it, with the best Q-value for a given city with a Reject action associated,
+	 * the neighbor where the previous maximum is attained, and the tasks whose Q-value beats it
 	 * @param topology (Topology): Describes the graph
 	 * @param td (TaskDistribution): Gives statistics about probabilities of task and expected weights and rewards
 	 * @param v (Vehicle): Gives information such as cost per kilometer and capacity
 	 */
 	public void reinforce(Topology topology, TaskDistribution td, Vehicle v) {
-		// Initialize arrays to 0	
-		P_nopacket = new double[topology.cities().size()];
-		V = new double[topology.cities().size()];
-		Q = new double[topology.cities().size()][topology.cities().size()][2];
-		Best_value = new double[topology.cities().size()];
+		// Compile the rewards, probabilities and feasible actions once, so the solver does not go
+		// through the topology and the task distribution on every iteration
+		CompiledMDP mdp = CompiledMDP.compile(topology, td, v);
 		
-		Best_neigh = new City[topology.cities().size()];
-		
-		// Compute probability of no having tasks at each city (so T(s,a,s') sums up to one for each s)
-		// This value will be repeatedly used later on
-		for (City city_a : topology) {
-			double p_nopacket = 0;
-			for (City city_b : topology) {
-				p_nopacket += td.probability(city_a, city_b);
-			}
-			P_nopacket[city_a.id] = 1 - p_nopacket;
-		}
+		// Initialize arrays to 0	
+		double[] V = new double[topology.cities().size()];
+		QTable Q = new QTable(mdp);
 		
 		// Iterate UNTIL GOOD ENOUGH
-		double dif;
-		double old_Qval;
-		do {
-			dif = 0;
-			for (City city_a : topology) {				
-				for (City city_b : topology) {					
-					// Actions: Refuse (0) and Accept (1)
-					if (city_a.hasNeighbor(city_b)) {
-						// Refusing a packet can only lead to neighbor states
-						old_Qval = Q[city_a.id][city_b.id][0];
-						Q[city_a.id][city_b.id][0] = - city_a.distanceTo(city_b) * v.costPerKm() +
-								discount * P_nopacket[city_a.id] / city_a.neighbors().size() * V[city_b.id];
-						
-						// Update V values if we find something better
-						V[city_a.id] = Math.max(Q[city_a.id][city_b.id][0], V[city_a.id]);
-						
-						// Check difference in Q value update
-						dif = Math.max(dif, Math.abs(Q[city_a.id][city_b.id][0] - old_Qval));
-					}
-					// We can accept a packet leading to any other city (except current) and in the case
-					// that we can carry its (expected) weight
-					if (td.weight(city_a, city_b) <= v.capacity() && city_a.id != city_b.id) {
-						old_Qval = Q[city_a.id][city_b.id][1];
-						
-						Q[city_a.id][city_b.id][1] = td.reward(city_a, city_b) -
-								city_a.distanceTo(city_b) * v.costPerKm() +
-								discount * td.probability(city_a, city_b) * V[city_b.id];
-						
-						// Update V values if we find something better
-						V[city_a.id] = Math.max(Q[city_a.id][city_b.id][1], V[city_a.id]);
-						
-						// Check difference in Q value update
-						dif = Math.max(dif, Math.abs(Q[city_a.id][city_b.id][1] - old_Qval));	
-					}
-				}
-			}
-		} while (dif > EPSILON);
+		long backups = solver.solve(mdp, discount, EPSILON, Q, V);
+		System.out.println("Q-values computed by " + solver.getClass().getSimpleName() + ": " + backups);
 		
-		// Compute Best vectors
-		for (City city_a: topology.cities()) {
-			double max_qval = -9999999; // If 0 can lead to vehicle choosing the current city if q values are negative
-			City max_neigh = city_a;
-			
-			for (City city_b: city_a.neighbors()) {
-				if(max_qval < Q[city_a.id][city_b.id][0]) {
-					max_qval = Q[city_a.id][city_b.id][0];
-					max_neigh = city_b;
-				}
-			}
-			Best_value[city_a.id] = max_qval;
-			Best_neigh[city_a.id] = max_neigh;
+		// Compute Best vectors and the tasks worth picking up
+		table = PolicyTable.fromQ(topology, mdp, Q, V);
+	}
+
+	/**
+	 * @param name (String): Name of the solver, as in the "solver" property of the agent
+	 * @return QSolver: Algorithm that computes the Q-values
+	 */
+	public static QSolver createSolver(String name) {
+		switch (name) {
+		case "sweep":
+			return new SweepSolver();
+		case "prioritized":
+			return new PrioritizedSweepingSolver();
+		case "jacobi":
+			return new JacobiSolver();
+		default:
+			throw new IllegalArgumentException("Unknown solver " + name + ", use sweep, prioritized or jacobi");
 		}
 	}
 
@@ -203,7 +209,7 @@ public class ReactiveTemplate implements ReactiveBehavior {
 			action = new Move(Best_neigh[city_a.id]);
 			
 			if (availableTask != null) {
-				if (Best_value[city_a.id] < Q[city_a.id][availableTask.deliveryCity.id][1] 
+				if (table.shouldPickup(city_a.id, availableTask.deliveryCity.id) 
 						&& availableTask.weight <= vehicle.capacity()){
 					// Delivery is possible and optimal
 					action = new Pickup(availableTask);	
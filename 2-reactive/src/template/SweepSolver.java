@@ -0,0 +1,25 @@
+package template;
+
+/**
+ * Value iteration that sweeps every (city_a, city_b) pair in order, updating
+ * the Q-values and V in place (Gauss-Seidel), until the largest change of a
+ * Q-value in a whole sweep is below epsilon.
+ */
+public class SweepSolver implements QSolver {
+
+	@Override
+	public long solve(CompiledMDP mdp, double discount, double epsilon, QTable Q, double[] V) {
+		long backups = 0;
+		// Iterate UNTIL GOOD ENOUGH
+		double dif;
+		do {
+			dif = 0;
+			for (int a = 0; a < mdp.size(); a++) {
+				// Check difference in Q value update, V is updated if we find something better
+				dif = Math.max(dif, mdp.backup(a, discount, V, V, Q));
+				backups += mdp.getNumActions(a);
+			}
+		} while (dif > epsilon);
+		return backups;
+	}
+}